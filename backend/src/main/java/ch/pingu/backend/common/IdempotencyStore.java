@@ -0,0 +1,129 @@
+package ch.pingu.backend.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Results of completed write requests by Idempotency-Key, so a client retrying a
+ * request it never got an answer for receives the original result instead of
+ * repeating the write. Keys are scoped to the user; reusing one for a different
+ * request is rejected. Entries expire after the TTL and the oldest are dropped
+ * beyond the size limit.
+ *
+ * A duplicate arriving while the first request is still running waits for it.
+ * Failures are not kept, so the request can be retried with the same key.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    public record Result<T>(T value, boolean replayed) {}
+
+    private record Entry(byte[] fingerprint, long expiresAt, CompletableFuture<Object> result) {}
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    // insertion order is expiry order, as every entry lives for the same TTL
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    public IdempotencyStore(@Value("${idempotency.maxEntries:10000}") int maxEntries,
+                            @Value("${idempotency.ttlSeconds:86400}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+    }
+
+    /**
+     * Runs the action once per key; a repeat of the same request replays its result.
+     * Without a key the action simply runs.
+     *
+     * @param request everything that identifies the request, e.g. operation and body
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Result<T> execute(String user, String key, String request, Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return new Result<>(action.get(), false);
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String scopedKey = user + "\n" + key;
+        byte[] fingerprint = sha256(request);
+        long now = System.nanoTime();
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            evict(now);
+            entry = entries.get(scopedKey);
+            if (entry == null) {
+                entry = new Entry(fingerprint, now + ttlNanos, new CompletableFuture<>());
+                entries.put(scopedKey, entry);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            if (!Arrays.equals(entry.fingerprint(), fingerprint)) {
+                throw new IllegalArgumentException(HEADER + " was already used for a different request");
+            }
+            return new Result<>((T) await(entry.result()), true);
+        }
+        try {
+            T value = action.get();
+            entry.result().complete(value);
+            return new Result<>(value, false);
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(scopedKey, entry);
+            }
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void evict(long now) {
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Entry oldest = it.next().getValue();
+            if (entries.size() < maxEntries && oldest.expiresAt() - now > 0) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    // a waiting duplicate ends like the original: same value, or the same exception
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the original request", e);
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ch.pingu.backend.common;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version 7 UUIDs (RFC 9562) for primary keys the server assigns: Unix
+ * milliseconds in the top 48 bits, then a 12 bit counter within the
+ * millisecond, then 62 random bits.
+ *
+ * New keys are larger than all keys before them, so inserts go to the right
+ * edge of the primary key index instead of to random pages, and they have the
+ * text form of random UUIDs, so existing rows keep their ids. Millisecond and
+ * counter are taken together with one atomic update, without locking; a full
+ * counter carries into the next millisecond. The random part is drawn from
+ * ThreadLocalRandom rather than SecureRandom, as the ids are not secrets.
+ */
+public final class TimeOrderedId {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private TimeOrderedId() {
+    }
+
+    public static String next() {
+        return nextUuid().toString();
+    }
+
+    public static UUID nextUuid() {
+        long stamp = LAST.accumulateAndGet(System.currentTimeMillis() << 12, (last, now) -> Math.max(now, last + 1));
+        long high = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xFFFL);
+        long low = ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL | 0x8000_0000_0000_0000L;
+        return new UUID(high, low);
+    }
+}
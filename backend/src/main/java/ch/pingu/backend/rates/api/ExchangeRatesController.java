@@ -1,25 +1,45 @@
 package ch.pingu.backend.rates.api;
 
 import ch.pingu.backend.rates.model.ExchangeRateVersion;
+import ch.pingu.backend.rates.model.ExchangeRateVersionSummary;
 import ch.pingu.backend.rates.service.ExchangeRatesService;
+import ch.pingu.backend.rates.service.RateSnapshot;
+import ch.pingu.backend.rates.service.RateSnapshotCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/rates")
 @Tag(name = "Exchange Rates")
 public class ExchangeRatesController {
 
+    public record ConversionItem(String from, String to, BigDecimal amount) {}
+    public record ConversionResult(String from, String to, BigDecimal amount, BigDecimal result) {}
+    public record AsOfConversionResult(String versionId, LocalDateTime at, String from, String to,
+                                       BigDecimal amount, BigDecimal result) {}
+
     private final ExchangeRatesService service;
+    private final ObjectMapper objectMapper;
 
-    public ExchangeRatesController(ExchangeRatesService service) {
+    public ExchangeRatesController(ExchangeRatesService service, ObjectMapper objectMapper) {
         this.service = service;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
@@ -28,16 +48,48 @@ public class ExchangeRatesController {
         return service.listAll();
     }
 
+    @GetMapping("/summaries")
+    @Operation(summary = "List all exchange rate versions with their rate count instead of the rates")
+    public List<ExchangeRateVersionSummary> summaries() {
+        return service.listSummaries();
+    }
+
     @GetMapping("/active")
     @Operation(summary = "Get currently active exchange rate version")
-    public ResponseEntity<ExchangeRateVersion> active() {
-        return service.findActive().map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<ExchangeRateVersion> active(WebRequest request) {
+        return service.findActiveSnapshot()
+                .map(snapshot -> conditional(snapshot, request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/as-of")
+    @Operation(summary = "Get the exchange rate version valid at a point in time (latest uploaded at or before it)")
+    public ResponseEntity<ExchangeRateVersion> asOf(
+            @RequestParam(name = "at") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+            WebRequest request) {
+        return service.findSnapshotAt(at)
+                .map(snapshot -> conditional(snapshot, request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/as-of/convert")
+    @Operation(summary = "Convert an amount using the rates valid at a point in time")
+    public ResponseEntity<AsOfConversionResult> convertAsOf(
+            @RequestParam(name = "at") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+            @RequestParam(name = "from") String from,
+            @RequestParam(name = "to") String to,
+            @RequestParam(name = "amount") BigDecimal amount) {
+        RateSnapshot rates = service.snapshotAt(at);
+        return ResponseEntity.ok(new AsOfConversionResult(rates.id(), at, from, to, amount,
+                rates.convert(from, to, amount)));
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "Get exchange rate version by id")
-    public ResponseEntity<ExchangeRateVersion> get(@PathVariable("id") String id) {
-        return service.findById(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<ExchangeRateVersion> get(@PathVariable("id") String id, WebRequest request) {
+        return service.findSnapshot(id)
+                .map(snapshot -> conditional(snapshot, request))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/{id}/convert")
@@ -49,10 +101,48 @@ public class ExchangeRatesController {
         return ResponseEntity.ok(service.convert(id, from, to, amount));
     }
 
+    @PostMapping("/{id}/convert/batch")
+    @Operation(summary = "Convert many amounts using a version's rates in one request")
+    public ResponseEntity<List<ConversionResult>> convertBatch(@PathVariable("id") String id,
+                                                               @RequestBody List<ConversionItem> items) {
+        RateSnapshot rates = service.snapshot(id);
+        List<ConversionResult> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            ConversionItem item = items.get(i);
+            if (item == null || item.from() == null || item.to() == null || item.amount() == null) {
+                throw new IllegalArgumentException("Item " + i + " requires from, to and amount");
+            }
+            results.add(new ConversionResult(item.from(), item.to(), item.amount(),
+                    rates.convert(item.from(), item.to(), item.amount())));
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(summary = "Hit/miss counters of the in-memory rate snapshot cache")
+    public RateSnapshotCache.Stats cacheStats() {
+        return service.cacheStats();
+    }
+
+    // The body is bound by hand so the parse phase can be timed along with validation and persistence
     @PostMapping
-    @Operation(summary = "Create or update a rate version (in-memory only)")
-    public ResponseEntity<ExchangeRateVersion> create(@Valid @RequestBody ExchangeRateVersion version) {
-        return ResponseEntity.ok(service.create(version));
+    @Operation(summary = "Create or update a rate version (persisted with the durable profile); phase timings are returned in the Server-Timing header")
+    public ResponseEntity<ExchangeRateVersion> create(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(schema = @Schema(implementation = ExchangeRateVersion.class)))
+            @RequestBody byte[] body) {
+        long start = System.nanoTime();
+        ExchangeRateVersion version = parse(body);
+        long parsed = System.nanoTime();
+        service.validate(version);
+        long validated = System.nanoTime();
+        ExchangeRateVersion saved = service.persist(version);
+        long persisted = System.nanoTime();
+
+        String timing = "parse;dur=" + millis(parsed - start)
+                + ", validate;dur=" + millis(validated - parsed)
+                + ", persist;dur=" + millis(persisted - validated);
+        return ResponseEntity.ok().header("Server-Timing", timing).body(saved);
     }
 
     @PutMapping("/{id}/activate")
@@ -60,4 +150,31 @@ public class ExchangeRatesController {
     public ResponseEntity<ExchangeRateVersion> activate(@PathVariable("id") String id) {
         return ResponseEntity.ok(service.activate(id));
     }
+
+    private ExchangeRateVersion parse(byte[] body) {
+        try {
+            ExchangeRateVersion version = objectMapper.readValue(body, ExchangeRateVersion.class);
+            if (version == null) {
+                throw new IllegalArgumentException("Request body is empty");
+            }
+            return version;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed rate version: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable rate version: " + e.getMessage());
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    // Answers If-None-Match with 304 so clients can revalidate a cached version without the payload
+    private ResponseEntity<ExchangeRateVersion> conditional(RateSnapshot snapshot, WebRequest request) {
+        String etag = snapshot.etag();
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(snapshot.toEntity());
+    }
 }
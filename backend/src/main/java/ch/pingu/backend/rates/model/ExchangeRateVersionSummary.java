@@ -0,0 +1,18 @@
+package ch.pingu.backend.rates.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * Listing view of a rate version: its metadata and the number of rates, without the rates themselves
+ */
+public record ExchangeRateVersionSummary(String id,
+                                         String versionName,
+                                         String baseCurrency,
+                                         @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm[[:ss][.SSSSSS]]")
+                                         LocalDateTime uploadedAt,
+                                         String uploadedBy,
+                                         boolean active,
+                                         long rateCount) {
+}
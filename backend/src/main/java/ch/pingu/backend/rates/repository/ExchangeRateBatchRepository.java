@@ -0,0 +1,63 @@
+package ch.pingu.backend.rates.repository;
+
+import ch.pingu.backend.rates.model.ExchangeRateVersion;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rate versions with plain JDBC so the rates of a version go to the
+ * database as a few batched statements instead of one statement per row,
+ * which is what saving the entity's element collection through JPA does.
+ * Must run inside the caller's transaction.
+ */
+@Repository
+public class ExchangeRateBatchRepository {
+
+    static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExchangeRateBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the version row or updates it if the id exists; returns true if it was inserted
+     */
+    public boolean upsertVersion(ExchangeRateVersion version) {
+        Timestamp uploadedAt = version.getUploadedAt() == null ? null : Timestamp.valueOf(version.getUploadedAt());
+        int updated = jdbcTemplate.update(
+                "UPDATE exchange_rate_versions SET version_name = ?, base_currency = ?, uploaded_at = ?, uploaded_by = ?, active = ? WHERE id = ?",
+                version.getVersionName(), version.getBaseCurrency(), uploadedAt, version.getUploadedBy(), version.isActive(), version.getId());
+        if (updated > 0) {
+            return false;
+        }
+        jdbcTemplate.update(
+                "INSERT INTO exchange_rate_versions (id, version_name, base_currency, uploaded_at, uploaded_by, active) VALUES (?, ?, ?, ?, ?, ?)",
+                version.getId(), version.getVersionName(), version.getBaseCurrency(), uploadedAt, version.getUploadedBy(), version.isActive());
+        return true;
+    }
+
+    /**
+     * Replaces all rates of a version, inserting them in batches of {@value #BATCH_SIZE}
+     */
+    public void replaceRates(String versionId, Map<String, BigDecimal> rates, boolean newVersion) {
+        if (!newVersion) {
+            jdbcTemplate.update("DELETE FROM exchange_rates WHERE version_id = ?", versionId);
+        }
+        List<Map.Entry<String, BigDecimal>> entries = new ArrayList<>(rates.entrySet());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO exchange_rates (version_id, currency, rate) VALUES (?, ?, ?)",
+                entries, BATCH_SIZE, (ps, entry) -> {
+                    ps.setString(1, versionId);
+                    ps.setString(2, entry.getKey());
+                    ps.setBigDecimal(3, entry.getValue());
+                });
+    }
+}
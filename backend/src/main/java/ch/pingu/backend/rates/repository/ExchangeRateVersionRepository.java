@@ -1,15 +1,42 @@
 package ch.pingu.backend.rates.repository;
 
 import ch.pingu.backend.rates.model.ExchangeRateVersion;
+import ch.pingu.backend.rates.model.ExchangeRateVersionSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface ExchangeRateVersionRepository extends JpaRepository<ExchangeRateVersion, String> {
+
+    interface UploadInstant {
+        String getId();
+        LocalDateTime getUploadedAt();
+    }
+
     Optional<ExchangeRateVersion> findByActiveTrue();
 
+    @Query("SELECT e FROM ExchangeRateVersion e LEFT JOIN FETCH e.rates WHERE e.id = :id")
+    Optional<ExchangeRateVersion> findWithRatesById(@Param("id") String id);
+
+    @Query("SELECT e FROM ExchangeRateVersion e LEFT JOIN FETCH e.rates WHERE e.active = true")
+    Optional<ExchangeRateVersion> findActiveWithRates();
+
+    @Query("SELECT new ch.pingu.backend.rates.model.ExchangeRateVersionSummary("
+            + "e.id, e.versionName, e.baseCurrency, e.uploadedAt, e.uploadedBy, e.active, COUNT(r)) "
+            + "FROM ExchangeRateVersion e LEFT JOIN e.rates r "
+            + "GROUP BY e.id, e.versionName, e.baseCurrency, e.uploadedAt, e.uploadedBy, e.active "
+            + "ORDER BY e.active DESC, e.uploadedAt DESC")
+    List<ExchangeRateVersionSummary> findAllSummaries();
+
+    @Query("SELECT e.id AS id, e.uploadedAt AS uploadedAt FROM ExchangeRateVersion e "
+            + "WHERE e.uploadedAt IS NOT NULL ORDER BY e.uploadedAt, e.id")
+    List<UploadInstant> findUploadInstants();
+
     @Modifying
     @Query("UPDATE ExchangeRateVersion e SET e.active = false")
     void deactivateAll();
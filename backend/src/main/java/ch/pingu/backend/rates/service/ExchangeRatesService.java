@@ -1,14 +1,18 @@
 package ch.pingu.backend.rates.service;
 
 import ch.pingu.backend.rates.model.ExchangeRateVersion;
+import ch.pingu.backend.rates.model.ExchangeRateVersionSummary;
+import ch.pingu.backend.rates.repository.ExchangeRateBatchRepository;
 import ch.pingu.backend.rates.repository.ExchangeRateVersionRepository;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -17,10 +21,22 @@ import java.util.Optional;
 @Service
 public class ExchangeRatesService {
 
+    private static final BigDecimal BASE_RATE_TOLERANCE = new BigDecimal("0.0001");
+    private static final int MAX_REPORTED_PROBLEMS = 20;
+
     private final ExchangeRateVersionRepository repository;
+    private final ExchangeRateBatchRepository batchRepository;
+    private final RateSnapshotCache cache;
+    private final RateVersionTimeline timeline;
 
-    public ExchangeRatesService(ExchangeRateVersionRepository repository) {
+    public ExchangeRatesService(ExchangeRateVersionRepository repository,
+                                ExchangeRateBatchRepository batchRepository,
+                                RateSnapshotCache cache,
+                                RateVersionTimeline timeline) {
         this.repository = repository;
+        this.batchRepository = batchRepository;
+        this.cache = cache;
+        this.timeline = timeline;
     }
 
     public List<ExchangeRateVersion> listAll() {
@@ -30,20 +46,114 @@ public class ExchangeRatesService {
         ));
     }
 
+    /**
+     * Metadata and rate count of every version, loaded with one aggregate query
+     */
+    public List<ExchangeRateVersionSummary> listSummaries() {
+        return repository.findAllSummaries();
+    }
+
     public Optional<ExchangeRateVersion> findById(String id) {
         return repository.findById(id);
     }
 
     public Optional<ExchangeRateVersion> findActive() {
-        return repository.findByActiveTrue();
+        return findActiveSnapshot().map(RateSnapshot::toEntity);
+    }
+
+    public Optional<RateSnapshot> findActiveSnapshot() {
+        RateSnapshot snapshot = cache.getActive();
+        if (snapshot == null) {
+            snapshot = repository.findActiveWithRates().map(RateSnapshot::of).orElse(null);
+            if (snapshot == null) return Optional.empty();
+            cache.load(snapshot);
+        }
+        return Optional.of(snapshot);
+    }
+
+    public Optional<RateSnapshot> findSnapshot(String versionId) {
+        RateSnapshot snapshot = cache.get(versionId);
+        if (snapshot == null) {
+            snapshot = repository.findWithRatesById(versionId).map(RateSnapshot::of).orElse(null);
+            if (snapshot == null) return Optional.empty();
+            cache.load(snapshot);
+        }
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * The version that was valid at the given time, i.e. the latest one uploaded at or before it
+     */
+    public Optional<RateSnapshot> findSnapshotAt(LocalDateTime at) {
+        return timeline.versionAt(at).flatMap(this::findSnapshot);
+    }
+
+    public RateSnapshot snapshotAt(LocalDateTime at) {
+        return findSnapshotAt(at).orElseThrow(() -> new NoSuchElementException("No rate version valid at " + at));
     }
 
     @Transactional
     public ExchangeRateVersion create(ExchangeRateVersion version) {
+        validate(version);
+        return persist(version);
+    }
+
+    /**
+     * Checks a version before anything is written and reports all problems at once
+     */
+    public void validate(ExchangeRateVersion version) {
+        List<String> problems = new ArrayList<>();
+        if (isBlank(version.getId())) {
+            problems.add("id is required");
+        }
+        if (isBlank(version.getVersionName())) {
+            problems.add("versionName is required");
+        }
+        String base = version.getBaseCurrency();
+        if (!isCurrencyCode(base)) {
+            problems.add("baseCurrency must be a three-letter upper-case code");
+        }
+        Map<String, BigDecimal> rates = version.getRates();
+        if (rates == null || rates.isEmpty()) {
+            problems.add("rates must contain at least one currency");
+        } else {
+            rates.forEach((code, rate) -> {
+                if (!isCurrencyCode(code)) {
+                    problems.add("invalid currency code '" + code + "'");
+                } else if (rate == null || rate.signum() <= 0) {
+                    problems.add("rate for " + code + " must be positive");
+                }
+            });
+            BigDecimal baseRate = base == null ? null : rates.get(base);
+            if (isCurrencyCode(base) && (baseRate == null || baseRate.subtract(BigDecimal.ONE).abs().compareTo(BASE_RATE_TOLERANCE) > 0)) {
+                problems.add("base currency " + base + " must have a rate of 1");
+            }
+        }
+        if (!problems.isEmpty()) {
+            String message = String.join("; ", problems.subList(0, Math.min(problems.size(), MAX_REPORTED_PROBLEMS)));
+            if (problems.size() > MAX_REPORTED_PROBLEMS) {
+                message += "; and " + (problems.size() - MAX_REPORTED_PROBLEMS) + " more";
+            }
+            throw new IllegalArgumentException("Invalid rate version: " + message);
+        }
+    }
+
+    /**
+     * Writes an already validated version, inserting its rates as JDBC batches
+     */
+    @Transactional
+    public ExchangeRateVersion persist(ExchangeRateVersion version) {
         if (version.isActive()) {
             repository.deactivateAll();
         }
-        return repository.save(version);
+        boolean inserted = batchRepository.upsertVersion(version);
+        batchRepository.replaceRates(version.getId(), version.getRates(), inserted);
+        RateSnapshot snapshot = RateSnapshot.of(version);
+        afterCommit(() -> {
+            cache.put(snapshot);
+            timeline.invalidate();
+        });
+        return version;
     }
 
     @Transactional
@@ -52,20 +162,46 @@ public class ExchangeRatesService {
                 .orElseThrow(() -> new NoSuchElementException("Version not found: " + id));
         repository.deactivateAll();
         version.setActive(true);
-        return repository.save(version);
+        ExchangeRateVersion saved = repository.save(version);
+        RateSnapshot snapshot = RateSnapshot.of(saved);
+        afterCommit(() -> cache.put(snapshot));
+        return saved;
     }
 
     public BigDecimal convert(String versionId, String from, String to, BigDecimal amount) {
-        ExchangeRateVersion v = findById(versionId).orElseThrow(() -> new NoSuchElementException("Version not found"));
-        Map<String, BigDecimal> rates = v.getRates();
-        if (rates == null) throw new IllegalStateException("No rates in version");
-        BigDecimal fromRate = rates.get(from);
-        BigDecimal toRate = rates.get(to);
-        if (fromRate == null || toRate == null) {
-            throw new NoSuchElementException("Currency not found");
+        return snapshot(versionId).convert(from, to, amount);
+    }
+
+    public RateSnapshotCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Resolves a version's rates once, e.g. to convert many amounts against the same version
+     */
+    public RateSnapshot snapshot(String versionId) {
+        return findSnapshot(versionId).orElseThrow(() -> new NoSuchElementException("Version not found"));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static boolean isCurrencyCode(String code) {
+        return code != null && code.matches("[A-Z]{3}");
+    }
+
+    // Publish new snapshots only once the version is committed, so a rollback never leaves stale rates behind
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        MathContext mc = new MathContext(18, RoundingMode.HALF_UP);
-        BigDecimal baseAmount = amount.divide(fromRate, mc);
-        return baseAmount.multiply(toRate, mc);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
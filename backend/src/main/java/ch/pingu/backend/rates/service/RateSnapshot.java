@@ -0,0 +1,96 @@
+package ch.pingu.backend.rates.service;
+
+import ch.pingu.backend.rates.model.ExchangeRateVersion;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Immutable, detached copy of an exchange rate version used to serve
+ * conversions and the active version without going back to the database.
+ */
+public record RateSnapshot(String id,
+                           String versionName,
+                           String baseCurrency,
+                           Map<String, BigDecimal> rates,
+                           LocalDateTime uploadedAt,
+                           String uploadedBy,
+                           boolean active) {
+
+    private static final MathContext MC = new MathContext(18, RoundingMode.HALF_UP);
+
+    public static RateSnapshot of(ExchangeRateVersion version) {
+        Map<String, BigDecimal> rates = version.getRates() == null
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(version.getRates()));
+        return new RateSnapshot(
+                version.getId(),
+                version.getVersionName(),
+                version.getBaseCurrency(),
+                rates,
+                version.getUploadedAt(),
+                version.getUploadedBy(),
+                version.isActive()
+        );
+    }
+
+    /**
+     * Converts an amount by normalizing it to the base currency and applying the target rate
+     */
+    public BigDecimal convert(String from, String to, BigDecimal amount) {
+        BigDecimal fromRate = rates.get(from);
+        BigDecimal toRate = rates.get(to);
+        if (fromRate == null || toRate == null) {
+            throw new NoSuchElementException("Currency not found");
+        }
+        BigDecimal baseAmount = amount.divide(fromRate, MC);
+        return baseAmount.multiply(toRate, MC);
+    }
+
+    public RateSnapshot withActive(boolean active) {
+        return new RateSnapshot(id, versionName, baseCurrency, rates, uploadedAt, uploadedBy, active);
+    }
+
+    /**
+     * Strong validator: the SHA-256 of the full content with the rates in code order,
+     * so it changes whenever the version does
+     */
+    public String etag() {
+        StringBuilder content = new StringBuilder()
+                .append(versionName).append('\n')
+                .append(baseCurrency).append('\n')
+                .append(uploadedAt).append('\n')
+                .append(uploadedBy).append('\n')
+                .append(active).append('\n');
+        new TreeMap<>(rates).forEach((code, rate) -> content.append(code).append('=').append(rate).append('\n'));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"" + id + "-" + HexFormat.of().formatHex(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public ExchangeRateVersion toEntity() {
+        ExchangeRateVersion v = new ExchangeRateVersion();
+        v.setId(id);
+        v.setVersionName(versionName);
+        v.setBaseCurrency(baseCurrency);
+        v.setRates(new HashMap<>(rates));
+        v.setUploadedAt(uploadedAt);
+        v.setUploadedBy(uploadedBy);
+        v.setActive(active);
+        return v;
+    }
+}
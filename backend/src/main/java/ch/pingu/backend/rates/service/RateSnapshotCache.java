@@ -0,0 +1,77 @@
+package ch.pingu.backend.rates.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory rate snapshots keyed by version id, plus the currently active one.
+ * Snapshots are immutable and replaced atomically, so readers never lock;
+ * writers take one lock, so a load cannot interleave with an activation.
+ */
+@Component
+public class RateSnapshotCache {
+
+    public record Stats(long hits, long misses, int cachedVersions, String activeVersionId) {}
+
+    private final Map<String, RateSnapshot> versions = new ConcurrentHashMap<>();
+    private final AtomicReference<RateSnapshot> active = new AtomicReference<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Object writeLock = new Object();
+
+    public RateSnapshot get(String versionId) {
+        return record(versions.get(versionId));
+    }
+
+    public RateSnapshot getActive() {
+        return record(active.get());
+    }
+
+    public void put(RateSnapshot snapshot) {
+        synchronized (writeLock) {
+            versions.put(snapshot.id(), snapshot);
+            if (snapshot.active()) {
+                // activating one version deactivates all others
+                versions.replaceAll((id, cached) ->
+                        cached.active() && !id.equals(snapshot.id()) ? cached.withActive(false) : cached);
+                active.set(snapshot);
+            } else {
+                active.updateAndGet(current -> current != null && current.id().equals(snapshot.id()) ? null : current);
+            }
+        }
+    }
+
+    /**
+     * Caches a snapshot read on a miss without overriding one published meanwhile by create/activate.
+     * A snapshot read as active before another version was activated is cached as inactive.
+     */
+    public void load(RateSnapshot snapshot) {
+        synchronized (writeLock) {
+            RateSnapshot current = active.get();
+            RateSnapshot loaded = snapshot.active() && current != null && !current.id().equals(snapshot.id())
+                    ? snapshot.withActive(false)
+                    : snapshot;
+            if (versions.putIfAbsent(loaded.id(), loaded) == null && loaded.active() && current == null) {
+                active.set(loaded);
+            }
+        }
+    }
+
+    public Stats stats() {
+        RateSnapshot current = active.get();
+        return new Stats(hits.get(), misses.get(), versions.size(), current != null ? current.id() : null);
+    }
+
+    private RateSnapshot record(RateSnapshot snapshot) {
+        if (snapshot != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return snapshot;
+    }
+}
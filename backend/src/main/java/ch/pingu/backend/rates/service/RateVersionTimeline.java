@@ -0,0 +1,75 @@
+package ch.pingu.backend.rates.service;
+
+import ch.pingu.backend.rates.repository.ExchangeRateVersionRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * As-of index over rate versions: the upload times of all versions in
+ * ascending order, so the version valid at a point in time is found by
+ * binary search. Built from one query on first use and rebuilt after a
+ * version is written; readers never lock.
+ */
+@Component
+public class RateVersionTimeline {
+
+    private record Index(long generation, LocalDateTime[] uploadedAt, String[] versionIds) {}
+
+    private final ExchangeRateVersionRepository repository;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicReference<Index> index = new AtomicReference<>();
+
+    public RateVersionTimeline(ExchangeRateVersionRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Id of the latest version uploaded at or before the given time.
+     * Versions uploaded at the same instant are ordered by id.
+     */
+    public Optional<String> versionAt(LocalDateTime at) {
+        Index current = current();
+        LocalDateTime[] times = current.uploadedAt();
+        int low = 0;
+        int high = times.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid].isAfter(at)) {
+                high = mid - 1;
+            } else {
+                found = mid;
+                low = mid + 1;
+            }
+        }
+        return found < 0 ? Optional.empty() : Optional.of(current.versionIds()[found]);
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    private Index current() {
+        Index current = index.get();
+        if (current != null && current.generation() == generation.get()) {
+            return current;
+        }
+        long loadedGeneration = generation.get();
+        List<ExchangeRateVersionRepository.UploadInstant> instants = repository.findUploadInstants();
+        LocalDateTime[] times = new LocalDateTime[instants.size()];
+        String[] ids = new String[instants.size()];
+        for (int i = 0; i < instants.size(); i++) {
+            times[i] = instants.get(i).getUploadedAt();
+            ids[i] = instants.get(i).getId();
+        }
+        // an index loaded before a concurrent write carries the old generation and is reloaded on next use
+        Index loaded = new Index(loadedGeneration, times, ids);
+        index.set(loaded);
+        return loaded;
+    }
+}
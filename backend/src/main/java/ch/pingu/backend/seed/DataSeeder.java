@@ -141,10 +141,9 @@ public class DataSeeder implements ApplicationRunner {
         if (activeLatest && count > 0) {
             LocalDate latest = baseDate.minusDays(1);
             String latestId = "seed-version-" + latest.format(DateTimeFormatter.BASIC_ISO_DATE);
-            ratesService.findById(latestId).ifPresent(v -> {
-                v.setActive(true);
-                ratesService.create(v);
-            });
+            if (ratesService.findById(latestId).isPresent()) {
+                ratesService.activate(latestId);
+            }
         }
     }
 
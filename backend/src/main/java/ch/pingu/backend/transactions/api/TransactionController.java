@@ -1,14 +1,33 @@
 package ch.pingu.backend.transactions.api;
 
+import ch.pingu.backend.common.IdempotencyStore;
 import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.service.TransactionArchiveService;
+import ch.pingu.backend.transactions.service.TransactionEventBus;
+import ch.pingu.backend.transactions.service.TransactionExportService;
+import ch.pingu.backend.transactions.service.TransactionJournal;
+import ch.pingu.backend.transactions.service.TransactionPage;
+import ch.pingu.backend.transactions.service.TransactionQuery;
 import ch.pingu.backend.transactions.service.TransactionService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -16,10 +35,42 @@ import java.util.Map;
 @Tag(name = "Transactions")
 public class TransactionController {
 
+    public record BulkCreateResult(int count, List<String> ids) {}
+
+    public record BulkRevertRequest(List<String> ids, String reason) {}
+
+    public record RevertItem(String id, TransactionService.RevertOutcome outcome) {}
+
+    public record BulkRevertResult(int reverted, int alreadyReverted, int archived, int notFound, List<RevertItem> results) {}
+
     private final TransactionService service;
+    private final TransactionExportService exportService;
+    private final TransactionArchiveService archiveService;
+    private final TransactionJournal journal;
+    private final TransactionEventBus eventBus;
+    private final IdempotencyStore idempotency;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+    private final int maxBulkSize;
 
-    public TransactionController(TransactionService service) {
+    public TransactionController(TransactionService service,
+                                 TransactionExportService exportService,
+                                 TransactionArchiveService archiveService,
+                                 TransactionJournal journal,
+                                 TransactionEventBus eventBus,
+                                 IdempotencyStore idempotency,
+                                 ObjectMapper objectMapper,
+                                 @Value("${transactions.page.maxSize:5000}") int maxPageSize,
+                                 @Value("${transactions.bulk.maxSize:10000}") int maxBulkSize) {
         this.service = service;
+        this.exportService = exportService;
+        this.archiveService = archiveService;
+        this.journal = journal;
+        this.eventBus = eventBus;
+        this.idempotency = idempotency;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+        this.maxBulkSize = maxBulkSize;
     }
 
     @GetMapping
@@ -31,6 +82,66 @@ public class TransactionController {
         return service.listAll();
     }
 
+    @GetMapping("/page")
+    @Operation(summary = "List transactions page by page (newest first); pass nextCursor back as cursor for the next page")
+    public ResponseEntity<TransactionPage> page(@RequestParam(name = "consultantId", required = false) String consultantId,
+                                                @RequestParam(name = "cursor", required = false) String cursor,
+                                                @RequestParam(name = "size", defaultValue = "${transactions.page.defaultSize:500}") int size,
+                                                @RequestParam(name = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        return respond(TransactionQuery.byConsultant(consultantId), cursor, size, includeTotal);
+    }
+
+    @GetMapping("/query")
+    @Operation(summary = "Query transactions by execution date range, currency, status, consultant and customer, sorted and paged in the database")
+    public ResponseEntity<TransactionPage> query(@RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                 @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                 @RequestParam(name = "currency", required = false) String currency,
+                                                 @RequestParam(name = "status", required = false) String status,
+                                                 @RequestParam(name = "consultantId", required = false) String consultantId,
+                                                 @RequestParam(name = "customerId", required = false) String customerId,
+                                                 @RequestParam(name = "sort", defaultValue = "createdAt,desc") String sort,
+                                                 @RequestParam(name = "cursor", required = false) String cursor,
+                                                 @RequestParam(name = "size", defaultValue = "${transactions.page.defaultSize:500}") int size,
+                                                 @RequestParam(name = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        TransactionQuery query = toQuery(from, to, currency, status, consultantId, customerId, sort);
+        return respond(query, cursor, size, includeTotal);
+    }
+
+    @GetMapping("/export")
+    @Operation(summary = "Download all transactions matching the query filters as NDJSON or CSV, streamed from the database")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                        @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                        @RequestParam(name = "currency", required = false) String currency,
+                                                        @RequestParam(name = "status", required = false) String status,
+                                                        @RequestParam(name = "consultantId", required = false) String consultantId,
+                                                        @RequestParam(name = "customerId", required = false) String customerId,
+                                                        @RequestParam(name = "sort", defaultValue = "createdAt,desc") String sort,
+                                                        @RequestParam(name = "format", defaultValue = "ndjson") String format) {
+        TransactionQuery query = toQuery(from, to, currency, status, consultantId, customerId, sort);
+        TransactionExportService.Format exportFormat = TransactionExportService.Format.fromParam(format);
+        StreamingResponseBody body = out -> exportService.export(query, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"transactions." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Server-sent events for created, reverted and status-changed transactions; send Last-Event-ID to resume, a reset event means reload")
+    public SseEmitter events(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+                             @RequestParam(name = "consultantId", required = false) String consultantId) {
+        Long resumeAfter = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                // an id this server never issued; the client gets a reset
+                resumeAfter = 0L;
+            }
+        }
+        return eventBus.subscribe(resumeAfter, consultantId == null || consultantId.isBlank() ? null : consultantId);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get transaction by ID")
     public ResponseEntity<Transaction> get(@PathVariable("id") String id) {
@@ -40,21 +151,135 @@ public class TransactionController {
     }
 
     @PostMapping
-    @Operation(summary = "Create a new transaction")
-    public ResponseEntity<Transaction> create(@RequestBody Transaction transaction, Authentication auth) {
+    @Operation(summary = "Create a new transaction; a repeated Idempotency-Key replays the first result without writing again")
+    public ResponseEntity<Transaction> create(@RequestBody Transaction transaction,
+                                              @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                              Authentication auth) {
         if (transaction.getCreatedBy() == null && auth != null) {
             transaction.setCreatedBy(auth.getName());
         }
-        return ResponseEntity.ok(service.create(transaction));
+        // taken before create fills in the defaults, so a retry of the same body matches
+        String request = idempotencyKey == null ? "" : "create\n" + toJson(transaction);
+        IdempotencyStore.Result<Transaction> result = idempotency.execute(principal(auth), idempotencyKey, request,
+                () -> service.create(transaction));
+        return respond(HttpStatus.OK, result.replayed(), result.value());
+    }
+
+    @PostMapping("/bulk")
+    @Operation(summary = "Create many transactions in one database transaction; returns their ids in request order and the insert time in the Server-Timing header")
+    public ResponseEntity<BulkCreateResult> createAll(@RequestBody List<Transaction> transactions, Authentication auth) {
+        if (transactions.size() > maxBulkSize) {
+            throw new IllegalArgumentException("At most " + maxBulkSize + " transactions per request");
+        }
+        if (auth != null) {
+            transactions.stream()
+                    .filter(t -> t.getCreatedBy() == null)
+                    .forEach(t -> t.setCreatedBy(auth.getName()));
+        }
+        long start = System.nanoTime();
+        List<String> ids = service.createAll(transactions);
+        double persistMs = (System.nanoTime() - start) / 1e6;
+        return ResponseEntity.ok()
+                .header("Server-Timing", String.format(Locale.ROOT, "persist;dur=%.1f", persistMs))
+                .body(new BulkCreateResult(ids.size(), ids));
+    }
+
+    private static TransactionQuery toQuery(LocalDate from, LocalDate to, String currency, String status,
+                                            String consultantId, String customerId, String sort) {
+        String[] sortParts = sort.split(",", 2);
+        boolean ascending = sortParts.length > 1 && "asc".equalsIgnoreCase(sortParts[1].trim());
+        return new TransactionQuery(from, to, currency, status, consultantId, customerId,
+                TransactionQuery.SortField.fromProperty(sortParts[0].trim()), ascending);
+    }
+
+    private ResponseEntity<TransactionPage> respond(TransactionQuery query, String cursor, int size, boolean includeTotal) {
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + maxPageSize);
+        }
+        TransactionPage page = service.query(query, cursor, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (includeTotal) {
+            response.header("X-Total-Count", String.valueOf(service.count(query)));
+        }
+        return response.body(page);
     }
 
     @PostMapping("/{id}/revert")
-    @Operation(summary = "Revert a transaction")
+    @Operation(summary = "Revert a transaction with one conditional update; 409 with the unchanged transaction if it was already reverted. "
+            + "A repeated Idempotency-Key replays the first result without writing again")
     public ResponseEntity<Transaction> revert(@PathVariable("id") String id,
                                               @RequestBody Map<String, String> body,
+                                              @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
                                               Authentication auth) {
         String reason = body.getOrDefault("reason", "");
         String revertedBy = auth != null ? auth.getName() : "unknown";
-        return ResponseEntity.ok(service.revert(id, reason, revertedBy));
+        String request = "revert\n" + id + "\n" + reason;
+        IdempotencyStore.Result<TransactionService.RevertResult> result = idempotency.execute(principal(auth), idempotencyKey, request,
+                () -> service.revert(id, reason, revertedBy));
+        HttpStatus status = result.value().changed() ? HttpStatus.OK : HttpStatus.CONFLICT;
+        return respond(status, result.replayed(), result.value().transaction());
+    }
+
+    @PostMapping("/bulk/revert")
+    @Operation(summary = "Revert many transactions in one database transaction; reports for each id whether it was reverted, already reverted, archived or not found")
+    public ResponseEntity<BulkRevertResult> revertAll(@RequestBody BulkRevertRequest body, Authentication auth) {
+        if (body.ids() != null && body.ids().size() > maxBulkSize) {
+            throw new IllegalArgumentException("At most " + maxBulkSize + " ids per request");
+        }
+        String reason = body.reason() != null ? body.reason() : "";
+        String revertedBy = auth != null ? auth.getName() : "unknown";
+        long start = System.nanoTime();
+        Map<String, TransactionService.RevertOutcome> outcomes = service.revertAll(body.ids(), reason, revertedBy);
+        double persistMs = (System.nanoTime() - start) / 1e6;
+
+        List<RevertItem> results = new ArrayList<>(outcomes.size());
+        int[] counts = new int[TransactionService.RevertOutcome.values().length];
+        outcomes.forEach((id, outcome) -> {
+            results.add(new RevertItem(id, outcome));
+            counts[outcome.ordinal()]++;
+        });
+        return ResponseEntity.ok()
+                .header("Server-Timing", String.format(Locale.ROOT, "persist;dur=%.1f", persistMs))
+                .body(new BulkRevertResult(counts[TransactionService.RevertOutcome.REVERTED.ordinal()],
+                        counts[TransactionService.RevertOutcome.ALREADY_REVERTED.ordinal()],
+                        counts[TransactionService.RevertOutcome.ARCHIVED.ordinal()],
+                        counts[TransactionService.RevertOutcome.NOT_FOUND.ordinal()], results));
+    }
+
+    @PostMapping("/archive")
+    @Operation(summary = "Move transactions past the archive age into archive segments now instead of at the next scheduled run")
+    public ResponseEntity<TransactionArchiveService.ArchiveRun> archive() {
+        long start = System.nanoTime();
+        TransactionArchiveService.ArchiveRun run = archiveService.archiveNow();
+        double archiveMs = (System.nanoTime() - start) / 1e6;
+        return ResponseEntity.ok()
+                .header("Server-Timing", String.format(Locale.ROOT, "archive;dur=%.1f", archiveMs))
+                .body(run);
+    }
+
+    @GetMapping("/journal")
+    @Operation(summary = "Last journaled event, newest snapshot and the last failed background snapshot")
+    public TransactionJournal.Status journal() {
+        return journal.status();
+    }
+
+    private static <T> ResponseEntity<T> respond(HttpStatus status, boolean replayed, T body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+        if (replayed) {
+            response.header(IdempotencyStore.REPLAYED_HEADER, "true");
+        }
+        return response.body(body);
+    }
+
+    private static String principal(Authentication auth) {
+        return auth != null ? auth.getName() : "";
+    }
+
+    private String toJson(Transaction transaction) {
+        try {
+            return objectMapper.writeValueAsString(transaction);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot read transaction", e);
+        }
     }
 }
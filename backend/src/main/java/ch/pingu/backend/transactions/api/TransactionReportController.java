@@ -0,0 +1,39 @@
+package ch.pingu.backend.transactions.api;
+
+import ch.pingu.backend.transactions.model.ConsultantVolume;
+import ch.pingu.backend.transactions.model.CurrencyPairVolume;
+import ch.pingu.backend.transactions.service.TransactionRollupService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/transactions/reports")
+@Tag(name = "Transaction Reports")
+public class TransactionReportController {
+
+    private final TransactionRollupService rollups;
+
+    public TransactionReportController(TransactionRollupService rollups) {
+        this.rollups = rollups;
+    }
+
+    @GetMapping("/pairs")
+    @Operation(summary = "Daily count, volume and average rate per currency pair by execution date, reverted transactions excluded; read from the rollups")
+    public List<CurrencyPairVolume> pairs(@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return rollups.pairVolumes(from, to);
+    }
+
+    @GetMapping("/consultants")
+    @Operation(summary = "Daily count, volume and average rate per consultant and currency pair by execution date, reverted transactions excluded; read from the rollups")
+    public List<ConsultantVolume> consultants(@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                              @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                              @RequestParam(name = "consultantId", required = false) String consultantId) {
+        return rollups.consultantVolumes(from, to, consultantId);
+    }
+}
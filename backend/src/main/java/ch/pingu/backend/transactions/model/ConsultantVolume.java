@@ -0,0 +1,17 @@
+package ch.pingu.backend.transactions.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Volume of one consultant in one currency pair on one day, excluding reverted transactions
+ */
+public record ConsultantVolume(LocalDate day,
+                               String consultantId,
+                               String sourceCurrency,
+                               String targetCurrency,
+                               long count,
+                               BigDecimal sourceVolume,
+                               BigDecimal targetVolume,
+                               double averageRate) {
+}
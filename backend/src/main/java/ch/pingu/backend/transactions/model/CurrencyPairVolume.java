@@ -0,0 +1,16 @@
+package ch.pingu.backend.transactions.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Volume of one currency pair on one day over all consultants, excluding reverted transactions
+ */
+public record CurrencyPairVolume(LocalDate day,
+                                 String sourceCurrency,
+                                 String targetCurrency,
+                                 long count,
+                                 BigDecimal sourceVolume,
+                                 BigDecimal targetVolume,
+                                 double averageRate) {
+}
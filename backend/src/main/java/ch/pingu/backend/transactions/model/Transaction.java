@@ -7,7 +7,17 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        // listing newest first, overall and per consultant; id makes the keyset order total
+        @Index(name = "idx_transactions_created", columnList = "created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_consultant_created", columnList = "consultant_id, created_at DESC, id DESC"),
+        // filters of the query endpoint, each followed by the default sort key
+        @Index(name = "idx_transactions_status_created", columnList = "status, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_source_currency_created", columnList = "source_currency, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_target_currency_created", columnList = "target_currency, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_customer_created", columnList = "customer_id, created_at DESC, id DESC"),
+        @Index(name = "idx_transactions_execution", columnList = "execution_date, id")
+})
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Transaction {
 
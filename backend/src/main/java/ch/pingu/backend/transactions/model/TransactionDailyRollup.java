@@ -0,0 +1,75 @@
+package ch.pingu.backend.transactions.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Running totals of the transactions executed on one day by one consultant in one
+ * currency pair. Kept up to date by the service in the same database transaction
+ * as every create and revert; reverted transactions are not counted.
+ */
+@Entity
+@Table(name = "transaction_daily_rollups")
+public class TransactionDailyRollup {
+
+    @EmbeddedId
+    private Key key;
+
+    private long transactionCount;
+
+    @Column(precision = 38, scale = 4)
+    private BigDecimal sourceVolume;
+
+    @Column(precision = 38, scale = 4)
+    private BigDecimal targetVolume;
+
+    private double rateSum;
+
+    // the primary key columns start with the day, so reports read a contiguous key range
+    @Embeddable
+    public static class Key implements Serializable {
+        private LocalDate executionDay;
+        private String sourceCurrency;
+        private String targetCurrency;
+        private String consultantId;
+
+        public Key() {}
+
+        public Key(LocalDate executionDay, String sourceCurrency, String targetCurrency, String consultantId) {
+            this.executionDay = executionDay;
+            this.sourceCurrency = sourceCurrency;
+            this.targetCurrency = targetCurrency;
+            this.consultantId = consultantId;
+        }
+
+        public LocalDate getExecutionDay() { return executionDay; }
+        public String getSourceCurrency() { return sourceCurrency; }
+        public String getTargetCurrency() { return targetCurrency; }
+        public String getConsultantId() { return consultantId; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(executionDay, other.executionDay)
+                    && Objects.equals(sourceCurrency, other.sourceCurrency)
+                    && Objects.equals(targetCurrency, other.targetCurrency)
+                    && Objects.equals(consultantId, other.consultantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(executionDay, sourceCurrency, targetCurrency, consultantId);
+        }
+    }
+
+    public Key getKey() { return key; }
+    public long getTransactionCount() { return transactionCount; }
+    public BigDecimal getSourceVolume() { return sourceVolume; }
+    public BigDecimal getTargetVolume() { return targetVolume; }
+    public double getRateSum() { return rateSum; }
+}
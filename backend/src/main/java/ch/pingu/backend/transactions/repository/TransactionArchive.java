@@ -0,0 +1,353 @@
+package ch.pingu.backend.transactions.repository;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier of the transactions: immutable, gzip-compressed segment files of
+ * transactions moved out of the database. Each file starts with an uncompressed
+ * header holding the row count, the min/max execution and creation dates and a
+ * Bloom filter of the ids, all kept in memory, so readers can skip segments by
+ * date and id without opening them. Decoded segments are cached, least recently
+ * used first out.
+ *
+ * A segment is written and renamed into place first and becomes visible to
+ * readers when the database transaction that deletes its rows commits; see
+ * {@link #publishOnCommit}. Readers that also query the transactions table do so
+ * through {@link #withSegments}, so they see every row in exactly one tier.
+ *
+ * Without transactions.archive.enabled the directory is neither read nor written
+ * and there are no segments.
+ */
+@Repository
+public class TransactionArchive {
+
+    private static final int MAGIC = 0x50544152;
+    private static final int VERSION = 1;
+    private static final int END = -1;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int BLOOM_BITS_PER_ID = 20;
+    private static final int BLOOM_HASHES = 14;
+    private static final String SUFFIX = ".segment";
+
+    /**
+     * What the header of one segment file says about its rows
+     */
+    public record Segment(long number, Path file, int count,
+                          LocalDateTime minExecuted, LocalDateTime maxExecuted,
+                          LocalDateTime minCreated, LocalDateTime maxCreated,
+                          long[] idFilter) {
+
+        /**
+         * False if the id is certainly not in this segment
+         */
+        public boolean mightContain(String id) {
+            long hash = hash(id);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            long bits = idFilter.length * 64L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+                if ((idFilter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final int cachedSegments;
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+    // replaced as a whole under the write lock, ordered by number
+    private volatile List<Segment> segments;
+    // guarded by itself
+    private final Map<Long, List<Transaction>> cache;
+
+    public TransactionArchive(ObjectMapper objectMapper,
+                              @Value("${transactions.archive.enabled:false}") boolean enabled,
+                              @Value("${transactions.archive.dir:data/archive}") String directory,
+                              @Value("${transactions.archive.cachedSegments:4}") int cachedSegments) throws IOException {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.cachedSegments = cachedSegments;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Transaction>> eldest) {
+                return size() > TransactionArchive.this.cachedSegments;
+            }
+        };
+        this.segments = enabled ? load() : List.of();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    /**
+     * Runs the read with the current segments while no segment is being swapped in, so a
+     * database query made inside it sees each transaction either in its table or in a segment
+     */
+    public <T> T withSegments(Function<List<Segment>, T> read) {
+        swap.readLock().lock();
+        try {
+            return read.apply(segments);
+        } finally {
+            swap.readLock().unlock();
+        }
+    }
+
+    /**
+     * All rows of the segment, in the order written. The list is shared and must not be changed.
+     */
+    public List<Transaction> read(Segment segment) {
+        synchronized (cache) {
+            List<Transaction> cached = cache.get(segment.number());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Transaction> rows = new ArrayList<>(segment.count());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file()), BUFFER_BYTES))) {
+            readHeader(segment.file(), in);
+            DataInputStream body = new DataInputStream(new GZIPInputStream(in, BUFFER_BYTES));
+            for (int length = body.readInt(); length != END; length = body.readInt()) {
+                rows.add(objectMapper.readValue(body.readNBytes(length), Transaction.class));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read archive segment " + segment.file(), e);
+        }
+        List<Transaction> shared = Collections.unmodifiableList(rows);
+        synchronized (cache) {
+            cache.put(segment.number(), shared);
+        }
+        return shared;
+    }
+
+    /**
+     * Looks the id up in the segments whose id filter may contain it; waits for a segment being swapped in
+     */
+    public Optional<Transaction> find(String id) {
+        return withSegments(current -> {
+            for (Segment segment : current) {
+                if (segment.mightContain(id)) {
+                    for (Transaction t : read(segment)) {
+                        if (id.equals(t.getId())) {
+                            return Optional.of(t);
+                        }
+                    }
+                }
+            }
+            return Optional.<Transaction>empty();
+        });
+    }
+
+    public boolean contains(String id) {
+        return find(id).isPresent();
+    }
+
+    /**
+     * Writes the rows as the next segment; readers do not see it until it is published.
+     * Every row needs its execution and creation date.
+     */
+    public Segment write(List<Transaction> rows) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("The transaction archive is disabled");
+        }
+        Files.createDirectories(directory);
+        List<Segment> current = segments;
+        long number = current.isEmpty() ? 1 : current.get(current.size() - 1).number() + 1;
+        Segment segment = describe(number, file(number), rows);
+        Path temporary = directory.resolve(segment.file().getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_BYTES));
+            writeHeader(out, segment);
+            // the gzip trailer carries a CRC of the content, checked when the segment is read
+            DataOutputStream body = new DataOutputStream(new GZIPOutputStream(out, BUFFER_BYTES));
+            for (Transaction t : rows) {
+                byte[] json = objectMapper.writeValueAsBytes(t);
+                body.writeInt(json.length);
+                body.write(json);
+            }
+            body.writeInt(END);
+            body.close();
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, segment.file(), StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    /**
+     * Makes the segment visible when the surrounding database transaction commits and deletes
+     * its file if it rolls back. Readers in {@link #withSegments} wait for the commit, so they
+     * never see the rows in both tiers or in neither.
+     */
+    public void publishOnCommit(Segment segment) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean locked;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                swap.writeLock().lock();
+                locked = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                List<Segment> next = new ArrayList<>(segments);
+                next.add(segment);
+                segments = List.copyOf(next);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status != STATUS_COMMITTED) {
+                        Files.deleteIfExists(segment.file());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot delete the unused archive segment " + segment.file(), e);
+                } finally {
+                    if (locked) {
+                        swap.writeLock().unlock();
+                    }
+                }
+            }
+        });
+    }
+
+    private List<Segment> load() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Segment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).sorted().toList()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    loaded.add(readHeader(file, in));
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong(Segment::number));
+        return List.copyOf(loaded);
+    }
+
+    private static Segment describe(long number, Path file, List<Transaction> rows) {
+        LocalDateTime minExecuted = null, maxExecuted = null, minCreated = null, maxCreated = null;
+        long[] filter = new long[Math.max(1, (rows.size() * BLOOM_BITS_PER_ID + 63) / 64)];
+        long bits = filter.length * 64L;
+        for (Transaction t : rows) {
+            LocalDateTime executed = t.getExecutionDate();
+            LocalDateTime created = t.getCreatedAt();
+            minExecuted = minExecuted == null || executed.isBefore(minExecuted) ? executed : minExecuted;
+            maxExecuted = maxExecuted == null || executed.isAfter(maxExecuted) ? executed : maxExecuted;
+            minCreated = minCreated == null || created.isBefore(minCreated) ? created : minCreated;
+            maxCreated = maxCreated == null || created.isAfter(maxCreated) ? created : maxCreated;
+            long hash = hash(t.getId());
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return new Segment(number, file, rows.size(), minExecuted, maxExecuted, minCreated, maxCreated, filter);
+    }
+
+    private static void writeHeader(DataOutputStream out, Segment segment) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(segment.number());
+        out.writeInt(segment.count());
+        out.writeLong(micros(segment.minExecuted()));
+        out.writeLong(micros(segment.maxExecuted()));
+        out.writeLong(micros(segment.minCreated()));
+        out.writeLong(micros(segment.maxCreated()));
+        out.writeInt(segment.idFilter().length);
+        for (long word : segment.idFilter()) {
+            out.writeLong(word);
+        }
+        out.flush();
+    }
+
+    private static Segment readHeader(Path file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an archive segment: " + file);
+        }
+        long number = in.readLong();
+        int count = in.readInt();
+        LocalDateTime minExecuted = dateTime(in.readLong());
+        LocalDateTime maxExecuted = dateTime(in.readLong());
+        LocalDateTime minCreated = dateTime(in.readLong());
+        LocalDateTime maxCreated = dateTime(in.readLong());
+        long[] filter = new long[in.readInt()];
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = in.readLong();
+        }
+        return new Segment(number, file, count, minExecuted, maxExecuted, minCreated, maxCreated, filter);
+    }
+
+    private static long micros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    private static LocalDateTime dateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    // 64-bit FNV-1a; its two halves seed the filter's hash functions
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private Path file(long number) {
+        return directory.resolve(String.format("%020d", number) + SUFFIX);
+    }
+}
@@ -0,0 +1,194 @@
+package ch.pingu.backend.transactions.repository;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Writes transactions with plain JDBC where the entity path costs extra reads.
+ * Saving an entity with an assigned id through Spring Data merges it, which
+ * selects the row before every insert; new transactions skip that and go out
+ * as batched INSERTs. An id that already exists fails the batch. Reverts are
+ * conditional UPDATEs over a set of ids, as are the deletes of archived rows.
+ * Must run inside the caller's transaction.
+ */
+@Repository
+public class TransactionBatchRepository {
+
+    static final int BATCH_SIZE = 500;
+    // H2 re-checks "id = ANY(?)" against the whole array for each row it finds, so larger arrays grow quadratically
+    static final int IDS_PER_STATEMENT = 1000;
+
+    private static final String COLUMNS = "id, consultant_id, customer_id, source_amount, "
+            + "source_currency, target_amount, target_currency, exchange_rate, exchange_rate_version_id, "
+            + "execution_date, created_at, created_by, status, revert_reason, reverted_at, reverted_by";
+
+    private static final String INSERT = "INSERT INTO transactions (" + COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // the OLD TABLE of the update holds exactly the rows it changed, as they were before
+    private static final String REVERT = "SELECT " + COLUMNS + " FROM OLD TABLE (UPDATE transactions "
+            + "SET status = 'REVERTED', revert_reason = ?, reverted_at = ?, reverted_by = ? "
+            + "WHERE id = ANY(?) AND (status IS NULL OR status <> 'REVERTED'))";
+
+    private static final String EXISTING_IDS = "SELECT id FROM transactions WHERE id = ANY(?)";
+
+    private static final String DELETE = "DELETE FROM transactions WHERE id = ANY(?)";
+
+    // oldest first, locked until the caller's transaction ends so nobody changes them while they are archived
+    private static final String LOCK_EXECUTED_BEFORE = "SELECT " + COLUMNS + " FROM transactions "
+            + "WHERE execution_date < ? AND created_at IS NOT NULL ORDER BY execution_date, id FETCH FIRST ? ROWS ONLY FOR UPDATE";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TransactionBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts all transactions in batches of {@value #BATCH_SIZE}
+     */
+    public void insertAll(List<Transaction> transactions) {
+        jdbcTemplate.batchUpdate(INSERT, transactions, BATCH_SIZE, TransactionBatchRepository::bind);
+    }
+
+    /**
+     * Reverts every listed transaction that is not reverted yet, with one UPDATE per
+     * {@value #IDS_PER_STATEMENT} ids, and returns the changed rows as they were before.
+     * Ids of rows that did not change are not returned.
+     */
+    public List<Transaction> revertAll(Collection<String> ids, String reason, LocalDateTime revertedAt, String revertedBy) {
+        List<Transaction> changed = new ArrayList<>();
+        for (List<String> chunk : chunks(ids)) {
+            changed.addAll(jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(REVERT);
+                ps.setString(1, reason);
+                ps.setTimestamp(2, timestamp(revertedAt));
+                ps.setString(3, revertedBy);
+                ps.setArray(4, con.createArrayOf("VARCHAR", chunk.toArray()));
+                return ps;
+            }, TransactionBatchRepository::map));
+        }
+        return changed;
+    }
+
+    public Set<String> findExistingIds(Collection<String> ids) {
+        Set<String> existing = new HashSet<>();
+        for (List<String> chunk : chunks(ids)) {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(EXISTING_IDS);
+                ps.setArray(1, con.createArrayOf("VARCHAR", chunk.toArray()));
+                return ps;
+            }, (RowCallbackHandler) rs -> existing.add(rs.getString(1)));
+        }
+        return existing;
+    }
+
+    /**
+     * Reads and locks up to limit transactions executed before the cutoff, oldest first
+     */
+    public List<Transaction> lockExecutedBefore(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.query(LOCK_EXECUTED_BEFORE, TransactionBatchRepository::map, timestamp(cutoff), limit);
+    }
+
+    /**
+     * Deletes the listed transactions with one DELETE per {@value #IDS_PER_STATEMENT} ids
+     */
+    public int deleteAll(Collection<String> ids) {
+        int deleted = 0;
+        for (List<String> chunk : chunks(ids)) {
+            deleted += jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(DELETE);
+                ps.setArray(1, con.createArrayOf("VARCHAR", chunk.toArray()));
+                return ps;
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Streams every transaction row to the consumer without holding them in memory
+     */
+    public void forEach(Consumer<Transaction> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT " + COLUMNS + " FROM transactions");
+            ps.setFetchSize(BATCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(map(rs, rs.getRow())));
+    }
+
+    private static List<List<String>> chunks(Collection<String> ids) {
+        List<String> all = new ArrayList<>(ids);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < all.size(); start += IDS_PER_STATEMENT) {
+            chunks.add(all.subList(start, Math.min(all.size(), start + IDS_PER_STATEMENT)));
+        }
+        return chunks;
+    }
+
+    private static Transaction map(ResultSet rs, int row) throws SQLException {
+        Transaction t = new Transaction();
+        t.setId(rs.getString(1));
+        t.setConsultantId(rs.getString(2));
+        t.setCustomerId(rs.getString(3));
+        t.setSourceAmount(money(rs.getString(4), rs.getString(5)));
+        t.setTargetAmount(money(rs.getString(6), rs.getString(7)));
+        t.setExchangeRate(rs.getDouble(8));
+        t.setExchangeRateVersionId(rs.getString(9));
+        t.setExecutionDate(localDateTime(rs.getTimestamp(10)));
+        t.setCreatedAt(localDateTime(rs.getTimestamp(11)));
+        t.setCreatedBy(rs.getString(12));
+        t.setStatus(rs.getString(13));
+        t.setRevertReason(rs.getString(14));
+        t.setRevertedAt(localDateTime(rs.getTimestamp(15)));
+        t.setRevertedBy(rs.getString(16));
+        return t;
+    }
+
+    // the entity maps an embedded value whose columns are all null to null
+    private static Transaction.MoneyDTO money(String amount, String currency) {
+        return amount == null && currency == null ? null : new Transaction.MoneyDTO(amount, currency);
+    }
+
+    private static LocalDateTime localDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    private static void bind(PreparedStatement ps, Transaction t) throws SQLException {
+        Transaction.MoneyDTO source = t.getSourceAmount();
+        Transaction.MoneyDTO target = t.getTargetAmount();
+        ps.setString(1, t.getId());
+        ps.setString(2, t.getConsultantId());
+        ps.setString(3, t.getCustomerId());
+        ps.setString(4, source == null ? null : source.getAmount());
+        ps.setString(5, source == null ? null : source.getCurrency());
+        ps.setString(6, target == null ? null : target.getAmount());
+        ps.setString(7, target == null ? null : target.getCurrency());
+        ps.setDouble(8, t.getExchangeRate());
+        ps.setString(9, t.getExchangeRateVersionId());
+        ps.setTimestamp(10, timestamp(t.getExecutionDate()));
+        ps.setTimestamp(11, timestamp(t.getCreatedAt()));
+        ps.setString(12, t.getCreatedBy());
+        ps.setString(13, t.getStatus());
+        ps.setString(14, t.getRevertReason());
+        ps.setTimestamp(15, timestamp(t.getRevertedAt()));
+        ps.setString(16, t.getRevertedBy());
+    }
+
+    private static Timestamp timestamp(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+}
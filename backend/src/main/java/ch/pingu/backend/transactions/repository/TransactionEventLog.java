@@ -0,0 +1,180 @@
+package ch.pingu.backend.transactions.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of transaction events in memory-mapped segment files. Every record
+ * carries a sequence number and a CRC; a record torn by a crash fails its check and
+ * the log ends before it. Written records are never changed, and a full segment is
+ * forced to disk and closed before the next one is started.
+ *
+ * Segment files are named after the sequence of their first record. Not thread-safe:
+ * the caller serializes appends.
+ */
+public class TransactionEventLog implements Closeable {
+
+    public record Entry(long sequence, byte type, byte[] payload) {}
+
+    // payload length, crc, sequence, type; a zero length marks the end of the written part
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 1;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int forcedTo;
+    private long lastSequence;
+
+    public TransactionEventLog(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            open(1);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        lastSequence = firstSequence(last) - 1;
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, channel.size()));
+        // appends continue right after the last intact record, overwriting a torn one
+        int end = scan(segment, false, entry -> lastSequence = entry.sequence());
+        if (segment.limit() - end >= 4 && segment.getInt(end) != 0) {
+            // clear what is left of the torn record, so none of it can pass for a later one
+            segment.put(end, new byte[segment.limit() - end]);
+            segment.force();
+        }
+        segment.position(end);
+        forcedTo = end;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Appends one record and returns its sequence number; durable only after {@link #force()}
+     */
+    public long append(byte type, byte[] payload) throws IOException {
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("Event of " + payload.length + " bytes does not fit a log segment");
+        }
+        // keep room for the zero length that ends the segment
+        if (segment.remaining() < size + 4) {
+            force();
+            channel.close();
+            open(lastSequence + 1);
+        }
+        long sequence = lastSequence + 1;
+        int start = segment.position();
+        segment.position(start + 8);
+        segment.putLong(sequence).put(type).put(payload);
+        segment.putInt(start + 4, crc(segment, start + 8, size - 8));
+        // written last, so a record is never visible before its content
+        segment.putInt(start, payload.length);
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Writes the records appended since the last call through to the disk
+     */
+    public void force() {
+        int position = segment.position();
+        if (position > forcedTo) {
+            segment.force(forcedTo, position - forcedTo);
+            forcedTo = position;
+        }
+    }
+
+    /**
+     * Reads every record with a sequence after the given one, in order
+     */
+    public void replay(long afterSequence, Consumer<Entry> consumer) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            // a segment ends where the next begins; skip those entirely at or before afterSequence
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= afterSequence + 1) {
+                continue;
+            }
+            boolean last = i == segments.size() - 1;
+            try (FileChannel file = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                scan(buffer, !last, entry -> {
+                    if (entry.sequence() > afterSequence) {
+                        consumer.accept(entry);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void open(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%020d", firstSequence) + SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // mapping beyond the end grows the file; the new space reads as zeros, i.e. as the end of the log
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        forcedTo = 0;
+    }
+
+    // returns the position after the last intact record
+    private static int scan(MappedByteBuffer buffer, boolean mustBeIntact, Consumer<Entry> consumer) {
+        int position = 0;
+        while (buffer.limit() - position >= HEADER_BYTES) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int size = HEADER_BYTES + length;
+            if (length < 0 || size > buffer.limit() - position
+                    || buffer.getInt(position + 4) != crc(buffer, position + 8, size - 8)) {
+                if (mustBeIntact) {
+                    throw new IllegalStateException("Corrupt event log record at offset " + position);
+                }
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            consumer.accept(new Entry(buffer.getLong(position + 8), buffer.get(position + 16), payload));
+            position += size;
+        }
+        return position;
+    }
+
+    private static int crc(MappedByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).sorted().toList());
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -2,10 +2,11 @@ package ch.pingu.backend.transactions.repository;
 
 import ch.pingu.backend.transactions.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 import java.util.List;
 
-public interface TransactionRepository extends JpaRepository<Transaction, String> {
+public interface TransactionRepository extends JpaRepository<Transaction, String>, JpaSpecificationExecutor<Transaction> {
     List<Transaction> findByConsultantIdOrderByCreatedAtDesc(String consultantId);
     List<Transaction> findAllByOrderByCreatedAtDesc();
 }
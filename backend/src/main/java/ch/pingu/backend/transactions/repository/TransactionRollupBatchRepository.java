@@ -0,0 +1,99 @@
+package ch.pingu.backend.transactions.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Adds deltas to the daily rollups with one batched MERGE, so concurrent writers
+ * increment the stored totals instead of overwriting them. A row whose count
+ * drops to zero is deleted. Must run inside the caller's transaction.
+ *
+ * Two transactions creating the same missing row both take the INSERT branch,
+ * and the later one fails on the primary key. The batch is then rolled back to a
+ * savepoint and run again; by then the other row is committed and gets updated.
+ * Deltas are written in key order, so batches lock shared rows in the same order.
+ */
+@Repository
+public class TransactionRollupBatchRepository {
+
+    static final int BATCH_SIZE = 500;
+    private static final int ATTEMPTS = 3;
+    private static final Comparator<Delta> KEY_ORDER = Comparator.comparing(Delta::day)
+            .thenComparing(Delta::sourceCurrency)
+            .thenComparing(Delta::targetCurrency)
+            .thenComparing(Delta::consultantId);
+
+    private static final String MERGE = "MERGE INTO transaction_daily_rollups r "
+            + "USING (VALUES (CAST(? AS DATE), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), "
+            + "CAST(? AS BIGINT), CAST(? AS NUMERIC(38, 4)), CAST(? AS NUMERIC(38, 4)), CAST(? AS DOUBLE PRECISION))) "
+            + "AS d (execution_day, source_currency, target_currency, consultant_id, transaction_count, source_volume, target_volume, rate_sum) "
+            + "ON r.execution_day = d.execution_day AND r.source_currency = d.source_currency "
+            + "AND r.target_currency = d.target_currency AND r.consultant_id = d.consultant_id "
+            + "WHEN MATCHED AND r.transaction_count + d.transaction_count = 0 THEN DELETE "
+            + "WHEN MATCHED THEN UPDATE SET transaction_count = r.transaction_count + d.transaction_count, "
+            + "source_volume = r.source_volume + d.source_volume, target_volume = r.target_volume + d.target_volume, "
+            + "rate_sum = r.rate_sum + d.rate_sum "
+            + "WHEN NOT MATCHED THEN INSERT (execution_day, source_currency, target_currency, consultant_id, "
+            + "transaction_count, source_volume, target_volume, rate_sum) VALUES (d.execution_day, d.source_currency, "
+            + "d.target_currency, d.consultant_id, d.transaction_count, d.source_volume, d.target_volume, d.rate_sum)";
+
+    /**
+     * Change of the totals of one rollup row; negative when transactions leave it
+     */
+    public record Delta(LocalDate day, String sourceCurrency, String targetCurrency, String consultantId,
+                        long count, BigDecimal sourceVolume, BigDecimal targetVolume, double rateSum) {
+
+        public Delta plus(Delta other) {
+            return new Delta(day, sourceCurrency, targetCurrency, consultantId, count + other.count,
+                    sourceVolume.add(other.sourceVolume), targetVolume.add(other.targetVolume), rateSum + other.rateSum);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TransactionRollupBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void apply(Collection<Delta> deltas) {
+        List<Delta> sorted = deltas.stream().sorted(KEY_ORDER).toList();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            for (int attempt = 1; ; attempt++) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    merge(sorted);
+                    connection.releaseSavepoint(savepoint);
+                    return null;
+                } catch (DuplicateKeyException e) {
+                    connection.rollback(savepoint);
+                    if (attempt == ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        });
+    }
+
+    private void merge(List<Delta> deltas) {
+        jdbcTemplate.batchUpdate(MERGE, deltas, BATCH_SIZE, (ps, delta) -> {
+            ps.setDate(1, Date.valueOf(delta.day()));
+            ps.setString(2, delta.sourceCurrency());
+            ps.setString(3, delta.targetCurrency());
+            ps.setString(4, delta.consultantId());
+            ps.setLong(5, delta.count());
+            ps.setBigDecimal(6, delta.sourceVolume());
+            ps.setBigDecimal(7, delta.targetVolume());
+            ps.setDouble(8, delta.rateSum());
+        });
+    }
+}
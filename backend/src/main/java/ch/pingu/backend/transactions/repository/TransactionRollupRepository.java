@@ -0,0 +1,31 @@
+package ch.pingu.backend.transactions.repository;
+
+import ch.pingu.backend.transactions.model.ConsultantVolume;
+import ch.pingu.backend.transactions.model.CurrencyPairVolume;
+import ch.pingu.backend.transactions.model.TransactionDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface TransactionRollupRepository extends JpaRepository<TransactionDailyRollup, TransactionDailyRollup.Key> {
+
+    @Query("SELECT new ch.pingu.backend.transactions.model.CurrencyPairVolume("
+            + "r.key.executionDay, r.key.sourceCurrency, r.key.targetCurrency, SUM(r.transactionCount), "
+            + "SUM(r.sourceVolume), SUM(r.targetVolume), SUM(r.rateSum) / SUM(r.transactionCount)) "
+            + "FROM TransactionDailyRollup r WHERE r.key.executionDay BETWEEN :from AND :to "
+            + "GROUP BY r.key.executionDay, r.key.sourceCurrency, r.key.targetCurrency "
+            + "ORDER BY r.key.executionDay, r.key.sourceCurrency, r.key.targetCurrency")
+    List<CurrencyPairVolume> findPairVolumes(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT new ch.pingu.backend.transactions.model.ConsultantVolume("
+            + "r.key.executionDay, r.key.consultantId, r.key.sourceCurrency, r.key.targetCurrency, r.transactionCount, "
+            + "r.sourceVolume, r.targetVolume, r.rateSum / r.transactionCount) "
+            + "FROM TransactionDailyRollup r WHERE r.key.executionDay BETWEEN :from AND :to "
+            + "AND (:consultantId IS NULL OR r.key.consultantId = :consultantId) "
+            + "ORDER BY r.key.executionDay, r.key.consultantId, r.key.sourceCurrency, r.key.targetCurrency")
+    List<ConsultantVolume> findConsultantVolumes(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                                 @Param("consultantId") String consultantId);
+}
@@ -0,0 +1,168 @@
+package ch.pingu.backend.transactions.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Full copies of the transactions, each valid as of an event log sequence number.
+ * A snapshot is written to a temporary file, forced to disk and renamed into place,
+ * and ends with a CRC over its content, so only complete snapshots are ever read.
+ * The {@value #KEEP} newest are kept; older ones are covered by them and the log.
+ */
+public class TransactionSnapshotStore {
+
+    private static final int MAGIC = 0x50545853;
+    private static final int END = -1;
+    private static final int KEEP = 2;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+
+    public TransactionSnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Starts a snapshot as of the given sequence; it only becomes visible with {@link Writer#commit()}
+     */
+    public Writer create(long sequence) throws IOException {
+        return new Writer(sequence);
+    }
+
+    /**
+     * The sequence of the newest complete snapshot
+     */
+    public OptionalLong latest() throws IOException {
+        for (Path file : snapshots().reversed()) {
+            if (isComplete(file)) {
+                return OptionalLong.of(sequence(file));
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    /**
+     * Reads the records of the snapshot taken as of the given sequence, in the order written
+     */
+    public void read(long sequence, Consumer<byte[]> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(sequence)), BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readLong() != sequence) {
+                throw new IOException("Not a snapshot as of " + sequence);
+            }
+            for (int length = in.readInt(); length != END; length = in.readInt()) {
+                consumer.accept(in.readNBytes(length));
+            }
+        }
+    }
+
+    public class Writer implements Closeable {
+        private final long sequence;
+        private final Path temporary;
+        private final CRC32 crc = new CRC32();
+        private final DataOutputStream out;
+        private boolean committed;
+
+        private Writer(long sequence) throws IOException {
+            this.sequence = sequence;
+            this.temporary = directory.resolve(String.format("%020d", sequence) + SUFFIX + ".tmp");
+            OutputStream file = Files.newOutputStream(temporary);
+            this.out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), BUFFER_BYTES));
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+        }
+
+        public void add(byte[] record) throws IOException {
+            out.writeInt(record.length);
+            out.write(record);
+        }
+
+        public void commit() throws IOException {
+            out.writeInt(END);
+            out.flush();
+            // the CRC covers everything before it
+            out.writeLong(crc.getValue());
+            out.close();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, file(sequence), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            List<Path> snapshots = snapshots();
+            for (Path old : snapshots.subList(0, Math.max(0, snapshots.size() - KEEP))) {
+                Files.deleteIfExists(old);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private static boolean isComplete(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size < 4 + 8 + 4 + 8) {
+            return false;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(stored, size - 8);
+        }
+        return stored.getLong(0) == crcOf(file, size - 8);
+    }
+
+    private static long crcOf(Path file, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_BYTES];
+        try (InputStream in = Files.newInputStream(file)) {
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return -1;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private Path file(long sequence) {
+        return directory.resolve(String.format("%020d", sequence) + SUFFIX);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static long sequence(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,81 @@
+package ch.pingu.backend.transactions.repository;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query criteria for transactions, combined into a single database query
+ */
+public final class TransactionSpecifications {
+
+    private TransactionSpecifications() {
+    }
+
+    public static Specification<Transaction> all() {
+        return (root, query, cb) -> cb.conjunction();
+    }
+
+    public static Specification<Transaction> consultant(String consultantId) {
+        return (root, query, cb) -> cb.equal(root.get("consultantId"), consultantId);
+    }
+
+    public static Specification<Transaction> customer(String customerId) {
+        return (root, query, cb) -> cb.equal(root.get("customerId"), customerId);
+    }
+
+    public static Specification<Transaction> status(String status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    /**
+     * Transactions with the currency on either side
+     */
+    public static Specification<Transaction> currency(String currency) {
+        return (root, query, cb) -> cb.or(
+                cb.equal(root.get("sourceAmount").get("currency"), currency),
+                cb.equal(root.get("targetAmount").get("currency"), currency));
+    }
+
+    public static Specification<Transaction> executedFrom(LocalDateTime inclusive) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("executionDate"), inclusive);
+    }
+
+    public static Specification<Transaction> executedBefore(LocalDateTime exclusive) {
+        return (root, query, cb) -> cb.lessThan(root.get("executionDate"), exclusive);
+    }
+
+    /**
+     * Sorted by the given date property; id breaks ties so the order is total and usable as a keyset.
+     * Columns the query fixes by equality can be listed as leading sort keys: they do not change the
+     * order, but let the database read a composite index in index order instead of sorting.
+     */
+    public static Sort keysetOrder(String property, boolean ascending, String... fixedProperties) {
+        Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String fixed : fixedProperties) {
+            orders.add(Sort.Order.asc(fixed));
+        }
+        orders.add(new Sort.Order(direction, property));
+        orders.add(new Sort.Order(direction, "id"));
+        return Sort.by(orders);
+    }
+
+    /**
+     * Rows that come after the given position in {@link #keysetOrder}. The redundant bound on the
+     * sort property lets the database seek to the position in an index instead of scanning up to it.
+     */
+    public static Specification<Transaction> after(String property, boolean ascending, LocalDateTime value, String id) {
+        return (root, query, cb) -> ascending
+                ? cb.and(cb.greaterThanOrEqualTo(root.get(property), value),
+                        cb.or(cb.greaterThan(root.get(property), value),
+                                cb.and(cb.equal(root.get(property), value), cb.greaterThan(root.get("id"), id))))
+                : cb.and(cb.lessThanOrEqualTo(root.get(property), value),
+                        cb.or(cb.lessThan(root.get(property), value),
+                                cb.and(cb.equal(root.get(property), value), cb.lessThan(root.get("id"), id))));
+    }
+}
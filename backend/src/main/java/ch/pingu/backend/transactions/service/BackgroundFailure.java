@@ -0,0 +1,14 @@
+package ch.pingu.backend.transactions.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * When a background task last failed and why, kept so the failure can be reported
+ * instead of being lost inside its executor
+ */
+public record BackgroundFailure(LocalDateTime at, String error) {
+
+    public static BackgroundFailure of(Exception e) {
+        return new BackgroundFailure(LocalDateTime.now(), e.toString());
+    }
+}
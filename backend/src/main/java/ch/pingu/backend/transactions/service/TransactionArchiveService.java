@@ -0,0 +1,321 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.repository.TransactionArchive;
+import ch.pingu.backend.transactions.repository.TransactionArchive.Segment;
+import ch.pingu.backend.transactions.repository.TransactionBatchRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the transactions table small by moving transactions executed more than
+ * transactions.archive.afterDays ago into archive segments, every
+ * transactions.archive.intervalMinutes when transactions.archive.enabled is set.
+ * Also reads the archive for queries and exports, so they see both tiers as one.
+ * The most recent failed run, scheduled or not, is kept and reported with every run.
+ * While the archive is disabled nothing is moved, also not on request.
+ */
+@Service
+public class TransactionArchiveService implements SmartInitializingSingleton {
+
+    public record ArchiveRun(int segments, int transactions, BackgroundFailure lastFailure) {}
+
+    private final TransactionArchive archive;
+    private final TransactionBatchRepository batchRepository;
+    private final TransactionTemplate writeTemplate;
+    private final int afterDays;
+    private final int segmentRows;
+    private volatile BackgroundFailure lastFailure;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-archive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TransactionArchiveService(TransactionArchive archive,
+                                     TransactionBatchRepository batchRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${transactions.archive.enabled:false}") boolean enabled,
+                                     @Value("${transactions.archive.afterDays:365}") int afterDays,
+                                     @Value("${transactions.archive.segmentRows:10000}") int segmentRows,
+                                     @Value("${transactions.archive.intervalMinutes:60}") long intervalMinutes) {
+        this.archive = archive;
+        this.batchRepository = batchRepository;
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+        this.afterDays = afterDays;
+        this.segmentRows = segmentRows;
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    archiveNow();
+                } catch (RuntimeException e) {
+                    // recorded by archiveNow; nothing was moved for the failed segment and the next run
+                    // tries again, which it would not if the exception ended the schedule
+                }
+            }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Removes rows still in the table that a crash left behind after their segment was written
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!archive.isEnabled()) {
+            return;
+        }
+        List<Segment> segments = archive.segments();
+        if (!segments.isEmpty()) {
+            List<String> ids = archive.read(segments.get(segments.size() - 1)).stream().map(Transaction::getId).toList();
+            writeTemplate.executeWithoutResult(status -> batchRepository.deleteAll(ids));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Moves every transaction past the archive age, one segment of up to segmentRows per database transaction
+     */
+    public synchronized ArchiveRun archiveNow() {
+        if (!archive.isEnabled()) {
+            throw new IllegalArgumentException("The transaction archive is disabled; set transactions.archive.enabled=true");
+        }
+        try {
+            return archive();
+        } catch (RuntimeException e) {
+            lastFailure = BackgroundFailure.of(e);
+            throw e;
+        }
+    }
+
+    private ArchiveRun archive() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        int segments = 0;
+        int moved = 0;
+        while (true) {
+            Integer rows = writeTemplate.execute(status -> moveSegment(cutoff));
+            if (rows == null || rows == 0) {
+                break;
+            }
+            segments++;
+            moved += rows;
+            if (rows < segmentRows) {
+                break;
+            }
+        }
+        return new ArchiveRun(segments, moved, lastFailure);
+    }
+
+    // the rows stay locked until the delete commits, and the segment is published with that commit
+    private int moveSegment(LocalDateTime cutoff) {
+        List<Transaction> rows = batchRepository.lockExecutedBefore(cutoff, segmentRows);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Segment segment;
+        try {
+            segment = archive.write(rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write an archive segment", e);
+        }
+        archive.publishOnCommit(segment);
+        batchRepository.deleteAll(rows.stream().map(Transaction::getId).toList());
+        return rows.size();
+    }
+
+    /**
+     * The hot rows merged with the archived rows matching the query after the cursor, both in the query's order
+     */
+    public Iterator<Transaction> withArchived(Iterator<Transaction> hot, List<Segment> segments,
+                                              TransactionQuery query, TransactionCursor after) {
+        if (segments.isEmpty()) {
+            return hot;
+        }
+        return new Merge(List.of(hot, new SegmentMerge(segments, query, after)), query.comparator());
+    }
+
+    /**
+     * How many archived transactions match the query. A segment wholly inside the date range
+     * of a query without other filters is counted from its header.
+     */
+    public long count(List<Segment> segments, TransactionQuery query) {
+        boolean dateRangeOnly = query.currency() == null && query.status() == null
+                && query.consultantId() == null && query.customerId() == null;
+        long count = 0;
+        for (Segment segment : segments) {
+            if (!overlaps(segment, query)) {
+                continue;
+            }
+            boolean inside = (query.from() == null || !segment.minExecuted().isBefore(query.from().atStartOfDay()))
+                    && (query.to() == null || segment.maxExecuted().isBefore(query.to().plusDays(1).atStartOfDay()));
+            count += dateRangeOnly && inside
+                    ? segment.count()
+                    : archive.read(segment).stream().filter(query::matches).count();
+        }
+        return count;
+    }
+
+    private static boolean overlaps(Segment segment, TransactionQuery query) {
+        return (query.from() == null || !segment.maxExecuted().isBefore(query.from().atStartOfDay()))
+                && (query.to() == null || segment.minExecuted().isBefore(query.to().plusDays(1).atStartOfDay()));
+    }
+
+    /*
+     * Archived rows in query order. Segments are taken up in the order of the first value of the
+     * sort key they may hold, and only decoded once the merge reaches that value; as segments cover
+     * mostly separate date ranges, a page rarely needs more than one or two of them.
+     */
+    private final class SegmentMerge implements Iterator<Transaction> {
+        private final TransactionQuery query;
+        private final TransactionCursor after;
+        private final Deque<Segment> pending = new ArrayDeque<>();
+        private final PriorityQueue<Rows> open;
+
+        SegmentMerge(List<Segment> segments, TransactionQuery query, TransactionCursor after) {
+            this.query = query;
+            this.after = after;
+            Comparator<Segment> byFirstValue = query.ascending()
+                    ? Comparator.comparing(this::lowest)
+                    : Comparator.comparing(this::highest).reversed();
+            segments.stream()
+                    .filter(s -> overlaps(s, query) && !beforeCursor(s))
+                    .sorted(byFirstValue)
+                    .forEach(pending::add);
+            Comparator<Transaction> order = query.comparator();
+            this.open = new PriorityQueue<>((a, b) -> order.compare(a.head(), b.head()));
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !open.isEmpty();
+        }
+
+        @Override
+        public Transaction next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Rows rows = open.poll();
+            Transaction next = rows.head();
+            rows.index++;
+            if (rows.index < rows.rows.size()) {
+                open.add(rows);
+            }
+            return next;
+        }
+
+        private void fill() {
+            while (!pending.isEmpty() && (open.isEmpty() || mayPrecede(pending.peekFirst(), open.peek().head()))) {
+                Segment segment = pending.pollFirst();
+                List<Transaction> rows = archive.read(segment).stream()
+                        .filter(query::matches)
+                        .filter(t -> after == null || after.precedes(t, query))
+                        .sorted(query.comparator())
+                        .toList();
+                if (!rows.isEmpty()) {
+                    open.add(new Rows(rows));
+                }
+            }
+        }
+
+        private boolean mayPrecede(Segment segment, Transaction head) {
+            LocalDateTime value = query.sortValue(head);
+            return query.ascending() ? !lowest(segment).isAfter(value) : !highest(segment).isBefore(value);
+        }
+
+        // every row of the segment comes before the cursor
+        private boolean beforeCursor(Segment segment) {
+            if (after == null) {
+                return false;
+            }
+            return query.ascending() ? highest(segment).isBefore(after.value()) : lowest(segment).isAfter(after.value());
+        }
+
+        private LocalDateTime lowest(Segment segment) {
+            return query.sortBy() == TransactionQuery.SortField.EXECUTION_DATE ? segment.minExecuted() : segment.minCreated();
+        }
+
+        private LocalDateTime highest(Segment segment) {
+            return query.sortBy() == TransactionQuery.SortField.EXECUTION_DATE ? segment.maxExecuted() : segment.maxCreated();
+        }
+    }
+
+    private static final class Rows {
+        private final List<Transaction> rows;
+        private int index;
+
+        Rows(List<Transaction> rows) {
+            this.rows = rows;
+        }
+
+        Transaction head() {
+            return rows.get(index);
+        }
+    }
+
+    // merges iterators that are each sorted by the comparator
+    private static final class Merge implements Iterator<Transaction> {
+        private final List<Iterator<Transaction>> sources;
+        private final Transaction[] heads;
+        private final Comparator<Transaction> order;
+
+        Merge(List<Iterator<Transaction>> sources, Comparator<Transaction> order) {
+            this.sources = sources;
+            this.heads = new Transaction[sources.size()];
+            this.order = order;
+            for (int i = 0; i < heads.length; i++) {
+                heads[i] = sources.get(i).hasNext() ? sources.get(i).next() : null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (Transaction head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Transaction next() {
+            int best = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (best < 0 || order.compare(heads[i], heads[best]) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                throw new NoSuchElementException();
+            }
+            Transaction next = heads[best];
+            Iterator<Transaction> source = sources.get(best);
+            heads[best] = source.hasNext() ? source.next() : null;
+            return next;
+        }
+    }
+}
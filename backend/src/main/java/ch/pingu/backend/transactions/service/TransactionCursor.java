@@ -0,0 +1,57 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a sorted transaction listing: the sort key and id of the last
+ * row returned. Clients only see it as an opaque continuation token.
+ */
+public record TransactionCursor(TransactionQuery.SortField sortBy, boolean ascending, LocalDateTime value, String id) {
+
+    public static TransactionCursor after(Transaction last, TransactionQuery query) {
+        LocalDateTime value = query.sortBy() == TransactionQuery.SortField.EXECUTION_DATE
+                ? last.getExecutionDate()
+                : last.getCreatedAt();
+        return new TransactionCursor(query.sortBy(), query.ascending(), value, last.getId());
+    }
+
+    /**
+     * True if the transaction comes after this position in the query's order
+     */
+    public boolean precedes(Transaction t, TransactionQuery query) {
+        int compared = query.sortValue(t).compareTo(value);
+        if (compared == 0) {
+            compared = t.getId().compareTo(id);
+        }
+        return ascending ? compared > 0 : compared < 0;
+    }
+
+    public String encode() {
+        String raw = sortBy.name() + "|" + (ascending ? "asc" : "desc") + "|" + value + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token and checks that it was issued for the same sort order
+     */
+    public static TransactionCursor decode(String token, TransactionQuery query) {
+        TransactionCursor cursor;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            cursor = new TransactionCursor(TransactionQuery.SortField.valueOf(parts[0]),
+                    "asc".equals(parts[1]), LocalDateTime.parse(parts[2]), parts[3]);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (cursor.sortBy != query.sortBy() || cursor.ascending != query.ascending()) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order");
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,279 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes transaction changes to server-sent event subscribers once their database
+ * transaction has committed. The most recent events are kept in a bounded buffer,
+ * so a client reconnecting with the id of the last event it received gets exactly
+ * what it missed; a client that fell further behind gets a reset event and reloads.
+ *
+ * Events are numbered and fanned out on one dispatcher thread, so every subscriber
+ * sees them in publish order and the subscriber list needs no locking. The dispatcher
+ * only queues them: each subscriber has its own queue, written to its connection by
+ * a sender thread, so a client that stops reading holds up no one else. A subscriber
+ * that still has transactions.events.queueSize events waiting when the next change
+ * is published is disconnected; it reconnects with its last event id and gets the
+ * missed events, or a reset.
+ */
+@Component
+public class TransactionEventBus {
+
+    public enum Type { CREATED, REVERTED, STATUS_CHANGED }
+
+    private record Event(long id, Type type, String consultantId, String data) {}
+
+    private static final String RESET = "reset";
+    private static final long HEARTBEAT_SECONDS = 20;
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final int queueSize;
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-events-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // touched on the dispatcher thread only
+    private final ArrayDeque<Event> recent = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    // ids continue from the start time, so ids held by clients from an earlier run are always older
+    private long lastId = System.currentTimeMillis() * 1000;
+
+    public TransactionEventBus(ObjectMapper objectMapper,
+                               @Value("${transactions.events.bufferSize:10000}") int bufferSize,
+                               @Value("${transactions.events.timeoutMs:1800000}") long timeoutMs,
+                               @Value("${transactions.events.queueSize:1000}") int queueSize) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+        this.queueSize = queueSize;
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Publishes the transaction's current state when the surrounding transaction commits; nothing on rollback
+     */
+    public void publish(Type type, Transaction transaction) {
+        publishAll(type, List.of(transaction));
+    }
+
+    public void publishAll(Type type, List<Transaction> transactions) {
+        // serialized now, so later changes to the entities cannot leak into the events
+        List<Event> events = new ArrayList<>(transactions.size());
+        for (Transaction t : transactions) {
+            events.add(new Event(0, type, t.getConsultantId(), toJson(t)));
+        }
+        Runnable deliver = () -> dispatcher.execute(() -> deliver(events));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deliver.run();
+                }
+            });
+        } else {
+            deliver.run();
+        }
+    }
+
+    /**
+     * Opens a feed, optionally limited to one consultant. With the id of the last event
+     * the client received, the missed events are sent first.
+     */
+    public SseEmitter subscribe(Long lastEventId, String consultantId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, consultantId);
+        emitter.onCompletion(subscriber::closed);
+        emitter.onTimeout(subscriber::closed);
+        emitter.onError(e -> subscriber.closed());
+        try {
+            // the first write must come from the request thread: it commits the response while
+            // the emitter is initialized, before the dispatcher thread may write to it
+            emitter.send(SseEmitter.event().comment("connected"));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        dispatcher.execute(() -> {
+            if (lastEventId != null && !replay(subscriber, lastEventId)) {
+                subscriber.offer(SseEmitter.event().id(String.valueOf(lastId)).name(RESET).data(""));
+            }
+            subscribers.add(subscriber);
+        });
+        return emitter;
+    }
+
+    @PreDestroy
+    public void close() {
+        dispatcher.execute(() -> {
+            subscribers.forEach(Subscriber::disconnect);
+            subscribers.clear();
+        });
+        dispatcher.shutdown();
+        senders.shutdown();
+    }
+
+    // false if events after the given id have already left the buffer
+    private boolean replay(Subscriber subscriber, long lastEventId) {
+        long oldestKept = recent.isEmpty() ? lastId + 1 : recent.peekFirst().id();
+        if (lastEventId > lastId || lastEventId < oldestKept - 1) {
+            return false;
+        }
+        for (Event event : recent) {
+            if (event.id() > lastEventId && matches(subscriber, event)) {
+                subscriber.offer(toSse(event));
+            }
+        }
+        return true;
+    }
+
+    private void deliver(List<Event> published) {
+        // checked per change rather than per event, so one large bulk does not drop every client
+        for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext(); ) {
+            Subscriber subscriber = it.next();
+            if (subscriber.queued.get() >= queueSize) {
+                it.remove();
+                subscriber.disconnect();
+            }
+        }
+        for (Event p : published) {
+            Event event = new Event(++lastId, p.type(), p.consultantId(), p.data());
+            recent.addLast(event);
+            if (recent.size() > bufferSize) {
+                recent.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (matches(subscriber, event)) {
+                    // a builder per subscriber: building it for the send changes it
+                    subscriber.offer(toSse(event));
+                }
+            }
+        }
+    }
+
+    // a comment line keeps idle connections open through proxies and finds clients that went away
+    private void heartbeat() {
+        subscribers.removeIf(subscriber -> subscriber.closed);
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queued.get() == 0) {
+                subscriber.offer(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    private static boolean matches(Subscriber subscriber, Event event) {
+        return subscriber.consultantId == null || subscriber.consultantId.equals(event.consultantId());
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(Event event) {
+        return SseEmitter.event()
+                .id(String.valueOf(event.id()))
+                .name(event.type().name().toLowerCase(Locale.ROOT).replace('_', '-'))
+                .data(event.data(), MediaType.APPLICATION_JSON);
+    }
+
+    /*
+     * One connection with the events queued for it. At most one sender drains the
+     * queue at a time, so events reach the client in the order they were queued.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final String consultantId;
+        private final Queue<SseEmitter.SseEventBuilder> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, String consultantId) {
+            this.emitter = emitter;
+            this.consultantId = consultantId;
+        }
+
+        void offer(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return;
+            }
+            queued.incrementAndGet();
+            queue.add(event);
+            startSending();
+        }
+
+        // ends the response; the client reconnects and resumes from its last event id
+        void disconnect() {
+            closed = true;
+            queue.clear();
+            senders.execute(emitter::complete);
+        }
+
+        void closed() {
+            closed = true;
+            queue.clear();
+            dispatcher.execute(() -> subscribers.remove(this));
+        }
+
+        private void startSending() {
+            if (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                closed();
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+            // an event queued after the last poll found the sender still busy
+            if (!closed) {
+                startSending();
+            }
+        }
+    }
+
+    private String toJson(Transaction transaction) {
+        try {
+            return objectMapper.writeValueAsString(transaction);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize transaction " + transaction.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.repository.TransactionArchive;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Writes all transactions matching a query to a stream while reading them from
+ * a database cursor, so an export never holds more than one fetch batch.
+ * Archived transactions are merged in, one or two decoded segments at a time.
+ */
+@Service
+public class TransactionExportService {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "id,consultantId,customerId,sourceAmount,sourceCurrency,targetAmount,"
+            + "targetCurrency,exchangeRate,exchangeRateVersionId,executionDate,createdAt,createdBy,status,"
+            + "revertReason,revertedAt,revertedBy";
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final MediaType mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = MediaType.parseMediaType(mediaType);
+            this.extension = extension;
+        }
+
+        public MediaType mediaType() {
+            return mediaType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format fromParam(String format) {
+            try {
+                return valueOf(format.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("format must be ndjson or csv");
+            }
+        }
+    }
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionArchive archive;
+    private final TransactionArchiveService archiveService;
+
+    public TransactionExportService(EntityManager entityManager, ObjectMapper objectMapper,
+                                    TransactionArchive archive, TransactionArchiveService archiveService) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.archive = archive;
+        this.archiveService = archiveService;
+    }
+
+    /**
+     * Streams the matching transactions in the query's order and returns how many were written
+     */
+    @Transactional(readOnly = true)
+    public long export(TransactionQuery query, Format format, OutputStream out) throws IOException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> criteria = cb.createQuery(Transaction.class);
+        Root<Transaction> root = criteria.from(Transaction.class);
+        criteria.where(query.specification().toPredicate(root, criteria, cb));
+        criteria.orderBy(QueryUtils.toOrders(query.order(), root, cb));
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        long count = 0;
+        // the query runs when the stream is opened, so it sees the same tiers as the segment list
+        List<TransactionArchive.Segment> segments = new ArrayList<>();
+        try (Stream<Transaction> rows = archive.withSegments(current -> {
+            segments.addAll(current);
+            return entityManager.createQuery(criteria)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultStream();
+        })) {
+            Iterator<Transaction> iterator = archiveService.withArchived(rows.iterator(), segments, query, null);
+            while (iterator.hasNext()) {
+                Transaction row = iterator.next();
+                if (format == Format.CSV) {
+                    writeCsv(writer, row);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                }
+                // written rows are not needed again; keep the persistence context from growing with the export
+                entityManager.detach(row);
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsv(Writer writer, Transaction t) throws IOException {
+        Transaction.MoneyDTO source = t.getSourceAmount();
+        Transaction.MoneyDTO target = t.getTargetAmount();
+        Object[] values = {
+                t.getId(), t.getConsultantId(), t.getCustomerId(),
+                source == null ? null : source.getAmount(), source == null ? null : source.getCurrency(),
+                target == null ? null : target.getAmount(), target == null ? null : target.getCurrency(),
+                t.getExchangeRate(), t.getExchangeRateVersionId(), t.getExecutionDate(), t.getCreatedAt(),
+                t.getCreatedBy(), t.getStatus(), t.getRevertReason(), t.getRevertedAt(), t.getRevertedBy()
+        };
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writer.write(csvField(values[i].toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
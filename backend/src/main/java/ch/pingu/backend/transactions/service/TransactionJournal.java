@@ -0,0 +1,361 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.repository.TransactionArchive;
+import ch.pingu.backend.transactions.repository.TransactionBatchRepository;
+import ch.pingu.backend.transactions.repository.TransactionEventLog;
+import ch.pingu.backend.transactions.repository.TransactionRepository;
+import ch.pingu.backend.transactions.repository.TransactionRollupRepository;
+import ch.pingu.backend.transactions.repository.TransactionSnapshotStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every transaction change in an append-only event log and restores the
+ * transactions table from it on startup, so transactions outlive the in-memory
+ * database and every revert stays on record. Enabled with transactions.journal.enabled.
+ *
+ * Each change is appended with the transaction's full state just before its database
+ * transaction commits, while the rows are still locked, so the log holds changes to a
+ * row in commit order; it is forced to disk before the commit. Should the commit fail
+ * after all, an abort record cancels those events. Every snapshotEvery events the
+ * table is copied to a snapshot in the background; a restart loads the newest snapshot
+ * and replays only the events after it. A snapshot that fails is reported in the
+ * status and tried again after another snapshotEvery events.
+ */
+@Service
+public class TransactionJournal implements SmartInitializingSingleton {
+
+    private static final byte CREATED = 1;
+    private static final byte STATUS_CHANGED = 2;
+    private static final byte REVERTED = 3;
+    private static final byte ABORTED = 4;
+
+    private record Group(long first, long last) {}
+
+    public record Status(boolean enabled, long lastSequence, long snapshotSequence, BackgroundFailure lastSnapshotFailure) {}
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long snapshotEvery;
+    private final ObjectMapper objectMapper;
+    private final TransactionRepository repository;
+    private final TransactionBatchRepository batchRepository;
+    private final TransactionRollupService rollups;
+    private final TransactionRollupRepository rollupRepository;
+    private final TransactionArchive archive;
+    private final TransactionTemplate writeTemplate;
+    private final TransactionTemplate readTemplate;
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-snapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private TransactionEventLog log;
+    private TransactionSnapshotStore snapshots;
+    // first sequence of each group of events appended but not yet committed or aborted
+    private final TreeSet<Long> uncommitted = new TreeSet<>();
+    // sequence of the newest snapshot written, and of the newest one started
+    private long snapshotSequence;
+    private long snapshotAttempted;
+    private boolean snapshotRunning;
+    private BackgroundFailure lastSnapshotFailure;
+
+    public TransactionJournal(ObjectMapper objectMapper,
+                              TransactionRepository repository,
+                              TransactionBatchRepository batchRepository,
+                              TransactionRollupService rollups,
+                              TransactionRollupRepository rollupRepository,
+                              TransactionArchive archive,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${transactions.journal.enabled:false}") boolean enabled,
+                              @Value("${transactions.journal.dir:data/journal}") String directory,
+                              @Value("${transactions.journal.segmentBytes:67108864}") int segmentBytes,
+                              @Value("${transactions.journal.snapshotEvery:100000}") long snapshotEvery) {
+        this.objectMapper = objectMapper;
+        this.repository = repository;
+        this.batchRepository = batchRepository;
+        this.rollups = rollups;
+        this.rollupRepository = rollupRepository;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.snapshotEvery = snapshotEvery;
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Logs the transactions' current state as one group when the surrounding transaction commits
+     */
+    public void record(TransactionEventBus.Type type, List<Transaction> transactions) {
+        if (!enabled || transactions.isEmpty()) {
+            return;
+        }
+        byte code = switch (type) {
+            case CREATED -> CREATED;
+            case STATUS_CHANGED -> STATUS_CHANGED;
+            case REVERTED -> REVERTED;
+        };
+        // serialized now, so later changes to the entities cannot leak into the log
+        List<byte[]> payloads = new ArrayList<>(transactions.size());
+        transactions.forEach(t -> payloads.add(toJson(t)));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            complete(append(code, payloads), true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private Group group;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                group = append(code, payloads);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (group != null) {
+                    complete(group, status == STATUS_COMMITTED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Opens the log and, if the database is empty, fills the transactions table from the newest
+     * snapshot and the events after it. The rollups would still hold archived transactions in a
+     * database whose table is empty only because everything was archived, so that one is left alone.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            synchronized (lock) {
+                log = new TransactionEventLog(directory.resolve("log"), segmentBytes);
+                snapshots = new TransactionSnapshotStore(directory.resolve("snapshots"));
+                snapshotSequence = snapshots.latest().orElse(0);
+                snapshotAttempted = snapshotSequence;
+            }
+            writeTemplate.executeWithoutResult(status -> {
+                if (repository.count() == 0 && rollupRepository.count() == 0) {
+                    restore();
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the transaction journal in " + directory, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        snapshotter.shutdown();
+        snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        synchronized (lock) {
+            if (log == null) {
+                return;
+            }
+            long sequence = lastCommitted();
+            log.close();
+            log = null;
+            // the next start then has no events to replay
+            if (sequence > snapshotSequence && !snapshotRunning) {
+                snapshot(sequence);
+                snapshotSequence = sequence;
+            }
+        }
+    }
+
+    private void restore() {
+        try {
+            Map<String, Transaction> tail = readTail(snapshotSequence);
+            // an archived transaction can no longer change, so its archived state is its final one
+            tail.keySet().removeIf(archive::contains);
+            for (TransactionArchive.Segment segment : archive.segments()) {
+                rollups.added(archive.read(segment));
+            }
+            if (snapshotSequence > 0) {
+                List<Transaction> batch = new ArrayList<>();
+                snapshots.read(snapshotSequence, json -> {
+                    Transaction t = fromJson(json);
+                    // a row changed after the snapshot is restored in its final state below
+                    if (!tail.containsKey(t.getId()) && !archive.contains(t.getId())) {
+                        batch.add(t);
+                        if (batch.size() == 1000) {
+                            insert(batch);
+                        }
+                    }
+                });
+                insert(batch);
+            }
+            insert(new ArrayList<>(tail.values()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot restore transactions from " + directory, e);
+        }
+    }
+
+    // final state of every transaction changed after the given sequence, skipping aborted groups
+    private Map<String, Transaction> readTail(long afterSequence) throws IOException {
+        Map<Long, Long> aborted = new HashMap<>();
+        log.replay(afterSequence, entry -> {
+            if (entry.type() == ABORTED) {
+                ByteBuffer range = ByteBuffer.wrap(entry.payload());
+                aborted.put(range.getLong(), range.getLong());
+            }
+        });
+        Map<String, Transaction> tail = new LinkedHashMap<>();
+        long[] skipUntil = {-1};
+        log.replay(afterSequence, entry -> {
+            Long abortedUntil = aborted.get(entry.sequence());
+            if (abortedUntil != null) {
+                skipUntil[0] = abortedUntil;
+            }
+            if (entry.type() == ABORTED || entry.sequence() <= skipUntil[0]) {
+                return;
+            }
+            Transaction t = fromJson(entry.payload());
+            tail.remove(t.getId());
+            tail.put(t.getId(), t);
+        });
+        return tail;
+    }
+
+    private void insert(List<Transaction> batch) {
+        if (!batch.isEmpty()) {
+            batchRepository.insertAll(batch);
+            rollups.added(batch);
+            batch.clear();
+        }
+    }
+
+    private Group append(byte type, List<byte[]> payloads) {
+        synchronized (lock) {
+            long first = log.lastSequence() + 1;
+            try {
+                for (byte[] payload : payloads) {
+                    log.append(type, payload);
+                }
+                log.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write to the transaction journal", e);
+            }
+            uncommitted.add(first);
+            return new Group(first, log.lastSequence());
+        }
+    }
+
+    private void complete(Group group, boolean committed) {
+        synchronized (lock) {
+            uncommitted.remove(group.first());
+            if (log == null) {
+                return;
+            }
+            if (!committed) {
+                try {
+                    log.append(ABORTED, ByteBuffer.allocate(16).putLong(group.first()).putLong(group.last()).array());
+                    log.force();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot write to the transaction journal", e);
+                }
+            }
+            if (!snapshotRunning && lastCommitted() - snapshotAttempted >= snapshotEvery) {
+                snapshotRunning = true;
+                long sequence = lastCommitted();
+                snapshotAttempted = sequence;
+                snapshotter.execute(() -> {
+                    BackgroundFailure failure = null;
+                    try {
+                        snapshot(sequence);
+                    } catch (RuntimeException e) {
+                        failure = BackgroundFailure.of(e);
+                    }
+                    synchronized (lock) {
+                        if (failure == null) {
+                            snapshotSequence = Math.max(snapshotSequence, sequence);
+                        } else {
+                            lastSnapshotFailure = failure;
+                        }
+                        snapshotRunning = false;
+                    }
+                });
+            }
+        }
+    }
+
+    public Status status() {
+        synchronized (lock) {
+            return new Status(enabled, log == null ? 0 : log.lastSequence(), snapshotSequence, lastSnapshotFailure);
+        }
+    }
+
+    // every event up to here belongs to a finished database transaction
+    private long lastCommitted() {
+        return uncommitted.isEmpty() ? log.lastSequence() : uncommitted.first() - 1;
+    }
+
+    /*
+     * Copies the table as it is now. Every event up to the sequence has committed, so the copy
+     * contains its effect; it may also contain later changes, which a restore replays on top.
+     * That is harmless, since each event carries the transaction's full state.
+     */
+    private void snapshot(long sequence) {
+        readTemplate.executeWithoutResult(status -> {
+            try (TransactionSnapshotStore.Writer writer = snapshots.create(sequence)) {
+                batchRepository.forEach(t -> {
+                    try {
+                        writer.add(toJson(t));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.commit();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write a transaction snapshot", e);
+            }
+        });
+    }
+
+    private byte[] toJson(Transaction transaction) {
+        try {
+            return objectMapper.writeValueAsBytes(transaction);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize transaction " + transaction.getId(), e);
+        }
+    }
+
+    private Transaction fromJson(byte[] json) {
+        try {
+            return objectMapper.readValue(json, Transaction.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read a journaled transaction", e);
+        }
+    }
+}
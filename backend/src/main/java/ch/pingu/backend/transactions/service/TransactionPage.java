@@ -0,0 +1,11 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+
+import java.util.List;
+
+/**
+ * One page of the transaction listing; nextCursor is null on the last page
+ */
+public record TransactionPage(List<Transaction> items, String nextCursor) {
+}
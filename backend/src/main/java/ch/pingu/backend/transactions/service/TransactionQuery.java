@@ -0,0 +1,158 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.repository.TransactionSpecifications;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Filter and sort criteria for listing transactions. Null criteria do not restrict the result.
+ * The date range applies to the execution date and includes both ends.
+ */
+public record TransactionQuery(LocalDate from,
+                               LocalDate to,
+                               String currency,
+                               String status,
+                               String consultantId,
+                               String customerId,
+                               SortField sortBy,
+                               boolean ascending) {
+
+    public enum SortField {
+        CREATED_AT("createdAt"),
+        EXECUTION_DATE("executionDate");
+
+        private final String property;
+
+        SortField(String property) {
+            this.property = property;
+        }
+
+        public String property() {
+            return property;
+        }
+
+        public static SortField fromProperty(String property) {
+            for (SortField field : values()) {
+                if (field.property.equals(property)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Cannot sort by " + property + "; use createdAt or executionDate");
+        }
+    }
+
+    public TransactionQuery {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        currency = normalize(currency);
+        status = normalize(status);
+        consultantId = blankToNull(consultantId);
+        customerId = blankToNull(customerId);
+        if (sortBy == null) {
+            sortBy = SortField.CREATED_AT;
+        }
+    }
+
+    /**
+     * Newest first, optionally restricted to one consultant
+     */
+    public static TransactionQuery byConsultant(String consultantId) {
+        return new TransactionQuery(null, null, null, null, consultantId, null, SortField.CREATED_AT, false);
+    }
+
+    /**
+     * The filter criteria as one database predicate
+     */
+    public Specification<Transaction> specification() {
+        Specification<Transaction> spec = TransactionSpecifications.all();
+        if (from != null) {
+            spec = spec.and(TransactionSpecifications.executedFrom(from.atStartOfDay()));
+        }
+        if (to != null) {
+            spec = spec.and(TransactionSpecifications.executedBefore(to.plusDays(1).atStartOfDay()));
+        }
+        if (currency != null) {
+            spec = spec.and(TransactionSpecifications.currency(currency));
+        }
+        if (status != null) {
+            spec = spec.and(TransactionSpecifications.status(status));
+        }
+        if (consultantId != null) {
+            spec = spec.and(TransactionSpecifications.consultant(consultantId));
+        }
+        if (customerId != null) {
+            spec = spec.and(TransactionSpecifications.customer(customerId));
+        }
+        return spec;
+    }
+
+    /**
+     * The same test as {@link #specification()}, for transactions outside the database
+     */
+    public boolean matches(Transaction t) {
+        LocalDateTime executed = t.getExecutionDate();
+        if (from != null && (executed == null || executed.isBefore(from.atStartOfDay()))) {
+            return false;
+        }
+        if (to != null && (executed == null || !executed.isBefore(to.plusDays(1).atStartOfDay()))) {
+            return false;
+        }
+        if (currency != null && !currency.equals(currency(t.getSourceAmount())) && !currency.equals(currency(t.getTargetAmount()))) {
+            return false;
+        }
+        return (status == null || status.equals(t.getStatus()))
+                && (consultantId == null || consultantId.equals(t.getConsultantId()))
+                && (customerId == null || customerId.equals(t.getCustomerId()));
+    }
+
+    /**
+     * The order of {@link #order()} for transactions outside the database
+     */
+    public Comparator<Transaction> comparator() {
+        Comparator<Transaction> order = Comparator.comparing(this::sortValue).thenComparing(Transaction::getId);
+        return ascending ? order : order.reversed();
+    }
+
+    public LocalDateTime sortValue(Transaction t) {
+        return sortBy == SortField.EXECUTION_DATE ? t.getExecutionDate() : t.getCreatedAt();
+    }
+
+    /**
+     * The keyset order of the result
+     */
+    public Sort order() {
+        return TransactionSpecifications.keysetOrder(sortBy.property(), ascending, indexedPrefix());
+    }
+
+    // The composite indexes on Transaction start with one of these columns followed by createdAt
+    // descending. Sorting by the fixed column first lets the database walk that index in order.
+    private String[] indexedPrefix() {
+        if (sortBy != SortField.CREATED_AT || ascending) {
+            return new String[0];
+        }
+        if (customerId != null) return new String[] {"customerId"};
+        if (consultantId != null) return new String[] {"consultantId"};
+        if (status != null) return new String[] {"status"};
+        return new String[0];
+    }
+
+    private static String currency(Transaction.MoneyDTO money) {
+        return money == null ? null : money.getCurrency();
+    }
+
+    private static String normalize(String code) {
+        String value = blankToNull(code);
+        return value == null ? null : value.toUpperCase(Locale.ROOT);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
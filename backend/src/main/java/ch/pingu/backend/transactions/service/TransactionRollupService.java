@@ -0,0 +1,124 @@
+package ch.pingu.backend.transactions.service;
+
+import ch.pingu.backend.transactions.model.ConsultantVolume;
+import ch.pingu.backend.transactions.model.CurrencyPairVolume;
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.model.TransactionDailyRollup;
+import ch.pingu.backend.transactions.repository.TransactionRollupBatchRepository;
+import ch.pingu.backend.transactions.repository.TransactionRollupBatchRepository.Delta;
+import ch.pingu.backend.transactions.repository.TransactionRollupRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the daily volume rollups per consultant and currency pair and answers
+ * the volume reports from them alone. Reports cost the same however many
+ * transactions exist, because they only read rollup rows of the requested days.
+ */
+@Service
+public class TransactionRollupService {
+
+    private static final String REVERTED = "REVERTED";
+    private static final String UNKNOWN = "";
+
+    private final TransactionRollupRepository repository;
+    private final TransactionRollupBatchRepository batchRepository;
+    private final int maxReportDays;
+
+    public TransactionRollupService(TransactionRollupRepository repository,
+                                    TransactionRollupBatchRepository batchRepository,
+                                    @Value("${transactions.reports.maxDays:366}") int maxReportDays) {
+        this.repository = repository;
+        this.batchRepository = batchRepository;
+        this.maxReportDays = maxReportDays;
+    }
+
+    /**
+     * Counts the transactions in their rollups; reverted ones are skipped
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void added(Collection<Transaction> transactions) {
+        apply(transactions, 1);
+    }
+
+    /**
+     * Takes the transaction out of its rollup; call before it is changed, a reverted one was never counted
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removed(Transaction transaction) {
+        apply(List.of(transaction), -1);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removed(Collection<Transaction> transactions) {
+        apply(transactions, -1);
+    }
+
+    @Transactional(readOnly = true)
+    public List<CurrencyPairVolume> pairVolumes(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return repository.findPairVolumes(from, to);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ConsultantVolume> consultantVolumes(LocalDate from, LocalDate to, String consultantId) {
+        checkRange(from, to);
+        return repository.findConsultantVolumes(from, to, consultantId);
+    }
+
+    private void checkRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxReportDays) {
+            throw new IllegalArgumentException("A report covers at most " + maxReportDays + " days");
+        }
+    }
+
+    // transactions sharing a rollup row are summed first, so each row is written once
+    private void apply(Collection<Transaction> transactions, int sign) {
+        Map<TransactionDailyRollup.Key, Delta> deltas = new LinkedHashMap<>();
+        for (Transaction t : transactions) {
+            if (REVERTED.equals(t.getStatus()) || t.getExecutionDate() == null) {
+                continue;
+            }
+            Delta delta = new Delta(t.getExecutionDate().toLocalDate(),
+                    currency(t.getSourceAmount()), currency(t.getTargetAmount()),
+                    t.getConsultantId() == null ? UNKNOWN : t.getConsultantId(),
+                    sign, amount(t.getSourceAmount(), sign), amount(t.getTargetAmount(), sign),
+                    sign * t.getExchangeRate());
+            TransactionDailyRollup.Key key = new TransactionDailyRollup.Key(delta.day(),
+                    delta.sourceCurrency(), delta.targetCurrency(), delta.consultantId());
+            deltas.merge(key, delta, Delta::plus);
+        }
+        if (!deltas.isEmpty()) {
+            batchRepository.apply(deltas.values());
+        }
+    }
+
+    private static String currency(Transaction.MoneyDTO money) {
+        return money == null || money.getCurrency() == null ? UNKNOWN : money.getCurrency();
+    }
+
+    private static BigDecimal amount(Transaction.MoneyDTO money, int sign) {
+        if (money == null || money.getAmount() == null || money.getAmount().isBlank()) {
+            return BigDecimal.ZERO;
+        }
+        try {
+            BigDecimal amount = new BigDecimal(money.getAmount().trim());
+            return sign < 0 ? amount.negate() : amount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + money.getAmount());
+        }
+    }
+}
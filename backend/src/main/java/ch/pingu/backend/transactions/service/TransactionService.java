@@ -1,59 +1,264 @@
 package ch.pingu.backend.transactions.service;
 
+import ch.pingu.backend.common.TimeOrderedId;
 import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.repository.TransactionArchive;
+import ch.pingu.backend.transactions.repository.TransactionBatchRepository;
 import ch.pingu.backend.transactions.repository.TransactionRepository;
+import ch.pingu.backend.transactions.repository.TransactionSpecifications;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
 
 @Service
 public class TransactionService {
 
+    public enum RevertOutcome { REVERTED, ALREADY_REVERTED, ARCHIVED, NOT_FOUND }
+
+    /**
+     * The transaction after the call; changed is false if it was already reverted
+     */
+    public record RevertResult(Transaction transaction, boolean changed) {}
+
     private final TransactionRepository repository;
+    private final TransactionBatchRepository batchRepository;
+    private final TransactionRollupService rollups;
+    private final TransactionEventBus events;
+    private final TransactionJournal journal;
+    private final TransactionArchive archive;
+    private final TransactionArchiveService archiveService;
 
-    public TransactionService(TransactionRepository repository) {
+    public TransactionService(TransactionRepository repository, TransactionBatchRepository batchRepository,
+                              TransactionRollupService rollups, TransactionEventBus events,
+                              TransactionJournal journal, TransactionArchive archive,
+                              TransactionArchiveService archiveService) {
         this.repository = repository;
+        this.batchRepository = batchRepository;
+        this.rollups = rollups;
+        this.events = events;
+        this.journal = journal;
+        this.archive = archive;
+        this.archiveService = archiveService;
     }
 
     public List<Transaction> listAll() {
-        return repository.findAllByOrderByCreatedAtDesc();
+        return archive.withSegments(segments -> withArchived(repository.findAllByOrderByCreatedAtDesc(), segments,
+                TransactionQuery.byConsultant(null)));
     }
 
     public Optional<Transaction> findById(String id) {
-        return repository.findById(id);
+        return repository.findById(id).or(() -> archive.find(id));
     }
 
     public List<Transaction> findByConsultantId(String consultantId) {
-        return repository.findByConsultantIdOrderByCreatedAtDesc(consultantId);
+        return archive.withSegments(segments -> withArchived(repository.findByConsultantIdOrderByCreatedAtDesc(consultantId),
+                segments, TransactionQuery.byConsultant(consultantId)));
+    }
+
+    private List<Transaction> withArchived(List<Transaction> hot, List<TransactionArchive.Segment> segments, TransactionQuery query) {
+        if (segments.isEmpty()) {
+            return hot;
+        }
+        List<Transaction> all = new ArrayList<>(hot.size());
+        archiveService.withArchived(hot.iterator(), segments, query, null).forEachRemaining(all::add);
+        return all;
     }
 
+    /**
+     * Reads one page of the transactions matching the query, continuing after the cursor if given.
+     * Seeks directly to the cursor instead of skipping rows, so every page costs the same.
+     * Archived transactions are merged in from the segments that can hold rows of the page.
+     */
+    public TransactionPage query(TransactionQuery query, String cursor, int size) {
+        TransactionCursor position = cursor == null || cursor.isBlank() ? null : TransactionCursor.decode(cursor, query);
+        Specification<Transaction> spec = position == null ? query.specification()
+                : query.specification().and(TransactionSpecifications.after(query.sortBy().property(), query.ascending(),
+                        position.value(), position.id()));
+        List<Transaction> rows = archive.withSegments(segments -> {
+            List<Transaction> hot = repository.findBy(spec, q -> q.sortBy(query.order()).limit(size + 1).all());
+            if (segments.isEmpty()) {
+                return hot;
+            }
+            List<Transaction> page = new ArrayList<>(size + 1);
+            Iterator<Transaction> merged = archiveService.withArchived(hot.iterator(), segments, query, position);
+            while (page.size() <= size && merged.hasNext()) {
+                page.add(merged.next());
+            }
+            return page;
+        });
+        if (rows.size() <= size) {
+            return new TransactionPage(rows, null);
+        }
+        List<Transaction> items = rows.subList(0, size);
+        return new TransactionPage(items, TransactionCursor.after(items.get(size - 1), query).encode());
+    }
+
+    public long count(TransactionQuery query) {
+        return archive.withSegments(segments -> repository.count(query.specification()) + archiveService.count(segments, query));
+    }
+
+    /**
+     * Creates the transaction, or replaces it if the id exists; an archived one cannot be replaced
+     */
+    @Transactional
     public Transaction create(Transaction txn) {
+        boolean assignedId = txn.getId() != null && !txn.getId().isBlank();
+        prepareNew(txn);
+        Optional<Transaction> existing = assignedId ? repository.findById(txn.getId()) : Optional.empty();
+        Transaction saved;
+        TransactionEventBus.Type event = TransactionEventBus.Type.CREATED;
+        if (existing.isPresent()) {
+            if (!Objects.equals(existing.get().getStatus(), txn.getStatus())) {
+                event = TransactionEventBus.Type.STATUS_CHANGED;
+            }
+            // the replaced row leaves its rollup before the merge copies the new state onto it
+            rollups.removed(existing.get());
+            saved = repository.save(txn);
+        } else {
+            if (assignedId && archive.contains(txn.getId())) {
+                throw archived(txn.getId());
+            }
+            batchRepository.insertAll(List.of(txn));
+            saved = txn;
+        }
+        rollups.added(List.of(saved));
+        journal.record(event, List.of(saved));
+        events.publish(event, saved);
+        return saved;
+    }
+
+    /**
+     * Inserts all transactions in one database transaction without reading them first.
+     * Returns the ids in request order; fails as a whole if any id is repeated or already exists.
+     */
+    @Transactional
+    public List<String> createAll(List<Transaction> transactions) {
+        if (transactions == null || transactions.isEmpty()) {
+            throw new IllegalArgumentException("At least one transaction is required");
+        }
+        List<String> ids = new ArrayList<>(transactions.size());
+        Set<String> seen = new HashSet<>(transactions.size() * 2);
+        for (Transaction txn : transactions) {
+            String id = prepareNew(txn).getId();
+            if (!seen.add(id)) {
+                throw new IllegalArgumentException("Duplicate transaction id in request: " + id);
+            }
+            ids.add(id);
+        }
+        for (String id : ids) {
+            if (archive.contains(id)) {
+                throw new DuplicateKeyException("Transaction " + id + " already exists in the archive");
+            }
+        }
+        batchRepository.insertAll(transactions);
+        rollups.added(transactions);
+        journal.record(TransactionEventBus.Type.CREATED, transactions);
+        events.publishAll(TransactionEventBus.Type.CREATED, transactions);
+        return ids;
+    }
+
+    private static Transaction prepareNew(Transaction txn) {
         if (txn.getId() == null || txn.getId().isBlank()) {
-            txn.setId(UUID.randomUUID().toString());
+            txn.setId(TimeOrderedId.next());
         }
         if (txn.getCreatedAt() == null) {
-            txn.setCreatedAt(LocalDateTime.now());
+            txn.setCreatedAt(now());
         }
         if (txn.getExecutionDate() == null) {
-            txn.setExecutionDate(LocalDateTime.now());
+            txn.setExecutionDate(now());
         }
         if (txn.getStatus() == null) {
             txn.setStatus("NOT_STARTED");
         }
-        return repository.save(txn);
+        return txn;
+    }
+
+    /**
+     * Reverts the transaction with one conditional UPDATE. An already reverted
+     * transaction is left as it is and returned with changed false.
+     */
+    @Transactional
+    public RevertResult revert(String id, String reason, String revertedBy) {
+        List<Transaction> reverted = revertRows(List.of(id), reason, revertedBy);
+        if (!reverted.isEmpty()) {
+            return new RevertResult(reverted.get(0), true);
+        }
+        Optional<Transaction> current = repository.findById(id);
+        if (current.isEmpty() && archive.contains(id)) {
+            throw archived(id);
+        }
+        return new RevertResult(current.orElseThrow(() -> new NoSuchElementException("Transaction not found: " + id)), false);
+    }
+
+    /**
+     * Reverts all listed transactions in one database transaction, one UPDATE per
+     * chunk of ids, and returns the outcome for each distinct id in request order.
+     */
+    @Transactional
+    public Map<String, RevertOutcome> revertAll(List<String> ids, String reason, String revertedBy) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one id is required");
+        }
+        Set<String> distinct = new LinkedHashSet<>(ids);
+        if (distinct.contains(null)) {
+            throw new IllegalArgumentException("Ids must not be null");
+        }
+        Set<String> reverted = new HashSet<>();
+        revertRows(distinct, reason, revertedBy).forEach(t -> reverted.add(t.getId()));
+        List<String> unchanged = distinct.stream().filter(id -> !reverted.contains(id)).toList();
+        Set<String> existing = unchanged.isEmpty() ? Set.of() : batchRepository.findExistingIds(unchanged);
+
+        Map<String, RevertOutcome> outcomes = new LinkedHashMap<>();
+        for (String id : distinct) {
+            outcomes.put(id, reverted.contains(id) ? RevertOutcome.REVERTED
+                    : existing.contains(id) ? RevertOutcome.ALREADY_REVERTED
+                    : archive.contains(id) ? RevertOutcome.ARCHIVED
+                    : RevertOutcome.NOT_FOUND);
+        }
+        return outcomes;
+    }
+
+    // the update returns the rows as they were, which is what their rollups were built from
+    private List<Transaction> revertRows(Collection<String> ids, String reason, String revertedBy) {
+        LocalDateTime revertedAt = now();
+        List<Transaction> reverted = batchRepository.revertAll(ids, reason, revertedAt, revertedBy);
+        if (reverted.isEmpty()) {
+            return reverted;
+        }
+        rollups.removed(reverted);
+        for (Transaction txn : reverted) {
+            txn.setStatus("REVERTED");
+            txn.setRevertReason(reason);
+            txn.setRevertedAt(revertedAt);
+            txn.setRevertedBy(revertedBy);
+        }
+        journal.record(TransactionEventBus.Type.REVERTED, reverted);
+        events.publishAll(TransactionEventBus.Type.REVERTED, reverted);
+        return reverted;
+    }
+
+    private static IllegalArgumentException archived(String id) {
+        return new IllegalArgumentException("Transaction " + id + " is archived and can no longer be changed");
     }
 
-    public Transaction revert(String id, String reason, String revertedBy) {
-        Transaction txn = repository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("Transaction not found: " + id));
-        txn.setStatus("REVERTED");
-        txn.setRevertReason(reason);
-        txn.setRevertedAt(LocalDateTime.now());
-        txn.setRevertedBy(revertedBy);
-        return repository.save(txn);
+    // the precision the database and the JSON format keep, so a returned or journaled transaction matches its row
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
     }
 }
@@ -0,0 +1,169 @@
+package ch.pingu.backend.util;
+
+import ch.pingu.backend.BackendApplication;
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.service.TransactionService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Reports sustained inserts per second and commit latency percentiles of
+ * TransactionService.create, the path behind POST /api/transactions, with the
+ * in-memory database and with the durable profile's file database at each given
+ * WRITE_DELAY. Every configuration starts the application in a fresh database,
+ * warms up, then creates transactions from several threads for a fixed time;
+ * the latency of a call includes its commit.
+ *
+ * usage cli:
+ * cd backend
+ * mvn compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/classes:$(cat target/classpath.txt) ch.pingu.backend.util.TransactionCreateBenchmark [seconds] [threads] [writeDelaysMs, e.g. 0,10]
+ */
+public class TransactionCreateBenchmark {
+
+    private static final String[] CURRENCIES = {"CHF", "EUR", "USD", "GBP", "JPY", "CAD", "AUD", "CNY", "INR", "SEK"};
+    private static final int WARM_UP_SECONDS = 5;
+
+    private record Result(long inserts, double seconds, long[] latenciesNanos) {}
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        String writeDelays = args.length > 2 ? args[2] : "0,10";
+
+        List<String> names = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        names.add("in-memory");
+        results.add(run(new String[]{"--spring.datasource.url=jdbc:h2:mem:create-benchmark"}, seconds, threads));
+        for (String delay : writeDelays.split(",")) {
+            if (delay.isBlank()) {
+                continue;
+            }
+            Path directory = Files.createTempDirectory("pingu-create-benchmark");
+            try {
+                names.add("durable, WRITE_DELAY=" + delay.trim());
+                results.add(run(new String[]{"--spring.profiles.active=durable", "--pingu.data.dir=" + directory,
+                        "--pingu.db.writeDelayMs=" + delay.trim()}, seconds, threads));
+            } finally {
+                delete(directory);
+            }
+        }
+
+        System.out.printf("%n%-26s %10s %12s %9s %9s %9s %9s%n", threads + " threads, " + seconds + " s",
+                "inserts", "inserts/s", "p50 (ms)", "p99 (ms)", "p99.9", "max (ms)");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            long[] sorted = r.latenciesNanos();
+            System.out.printf("%-26s %,10d %,12.0f %9.3f %9.3f %9.3f %9.3f%n", names.get(i), r.inserts(), r.inserts() / r.seconds(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static Result run(String[] properties, int seconds, int threads) throws InterruptedException {
+        String[] args = Stream.concat(Stream.of("--server.port=0", "--seed.enabled=false", "--seed.force_users=false",
+                "--spring.main.banner-mode=off", "--logging.level.root=WARN", "--logging.level.ch.pingu.backend=WARN"), Arrays.stream(properties)).toArray(String[]::new);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class).run(args)) {
+            TransactionService service = context.getBean(TransactionService.class);
+            measure(service, threads, WARM_UP_SECONDS, "warm-up");
+            return measure(service, threads, seconds, "run");
+        }
+    }
+
+    private static Result measure(TransactionService service, int threads, int seconds, String prefix) throws InterruptedException {
+        long[][] latencies = new long[threads][];
+        int[] counts = new int[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        long[] window = new long[2];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(worker);
+                long[] samples = new long[1 << 16];
+                int n = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = window[1];
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    // the client assigns ids, so every create first looks the id up
+                    service.create(transaction(prefix + "-" + worker + "-" + n, random));
+                    if (n == samples.length) {
+                        samples = Arrays.copyOf(samples, n * 2);
+                    }
+                    samples[n++] = System.nanoTime() - now;
+                }
+                latencies[worker] = samples;
+                counts[worker] = n;
+            });
+            workers.add(thread);
+            thread.start();
+        }
+        window[0] = System.nanoTime();
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - window[0]) / 1e9;
+
+        long total = Arrays.stream(counts).asLongStream().sum();
+        long[] all = new long[(int) total];
+        int offset = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        return new Result(total, elapsed, all);
+    }
+
+    private static Transaction transaction(String id, Random random) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        t.setConsultantId(String.format("user-%03d", random.nextInt(50)));
+        t.setCustomerId(String.format("customer-%05d", random.nextInt(10_000)));
+        t.setSourceAmount(money(random));
+        t.setTargetAmount(money(random));
+        t.setExchangeRate(0.5 + random.nextDouble());
+        t.setExchangeRateVersionId("benchmark-version");
+        t.setExecutionDate(LocalDateTime.of(2026, 1, 1, 0, 0).plusMinutes(random.nextInt(60 * 24 * 90)));
+        t.setCreatedBy("benchmark");
+        t.setStatus("COMPLETED");
+        return t;
+    }
+
+    private static Transaction.MoneyDTO money(Random random) {
+        Transaction.MoneyDTO money = new Transaction.MoneyDTO();
+        money.setAmount((1 + random.nextInt(100_000)) + "." + String.format("%02d", random.nextInt(100)));
+        money.setCurrency(CURRENCIES[random.nextInt(CURRENCIES.length)]);
+        return money;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
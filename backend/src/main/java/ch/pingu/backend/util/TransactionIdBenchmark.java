@@ -0,0 +1,165 @@
+package ch.pingu.backend.util;
+
+import ch.pingu.backend.BackendApplication;
+import ch.pingu.backend.common.TimeOrderedId;
+import ch.pingu.backend.transactions.model.Transaction;
+import ch.pingu.backend.transactions.service.TransactionService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Compares random UUIDs with time-ordered ids (TimeOrderedId) as transaction
+ * primary keys. First the cost of generating an id on its own, then insert
+ * throughput through TransactionService.createAll, the path behind
+ * POST /api/transactions/bulk, into a table that grows to the given number of
+ * rows. Every scheme starts in a fresh database, once in memory and once with
+ * the durable profile's file database. Inserts per second are reported for the
+ * whole run and for its last tenth, when the primary key index is largest;
+ * for the file database also its size once closed.
+ *
+ * usage cli:
+ * cd backend
+ * mvn compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -Xmx2g -cp target/classes:$(cat target/classpath.txt) ch.pingu.backend.util.TransactionIdBenchmark [rows] [batchSize]
+ */
+public class TransactionIdBenchmark {
+
+    private static final String[] CURRENCIES = {"CHF", "EUR", "USD", "GBP", "JPY", "CAD", "AUD", "CNY", "INR", "SEK"};
+    private static final int GENERATED_IDS = 5_000_000;
+
+    private record Scheme(String name, Supplier<String> ids) {}
+
+    private record Result(double seconds, double lastTenthSeconds, long fileBytes) {}
+
+    // keeps the generated ids from being optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        List<Scheme> schemes = List.of(
+                new Scheme("random UUID", () -> UUID.randomUUID().toString()),
+                new Scheme("time-ordered", TimeOrderedId::next));
+
+        System.out.printf("%n%-14s %12s%n", "scheme", "ns per id");
+        for (Scheme scheme : schemes) {
+            generate(scheme, GENERATED_IDS);
+            System.out.printf("%-14s %12.1f%n", scheme.name(), generate(scheme, GENERATED_IDS) / (double) GENERATED_IDS);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        for (Scheme scheme : schemes) {
+            names.add(scheme.name() + ", in-memory");
+            results.add(run(new String[]{"--spring.datasource.url=jdbc:h2:mem:id-benchmark"}, scheme, rows, batchSize, null));
+        }
+        for (Scheme scheme : schemes) {
+            Path directory = Files.createTempDirectory("pingu-id-benchmark");
+            try {
+                names.add(scheme.name() + ", durable");
+                results.add(run(new String[]{"--spring.profiles.active=durable", "--pingu.data.dir=" + directory},
+                        scheme, rows, batchSize, directory));
+            } finally {
+                delete(directory);
+            }
+        }
+
+        System.out.printf("%n%-26s %12s %14s %12s%n", String.format("%,d rows", rows), "inserts/s", "last 10% (/s)", "file (MB)");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            System.out.printf("%-26s %,12.0f %,14.0f %12s%n", names.get(i), rows / r.seconds(), rows / 10.0 / r.lastTenthSeconds(),
+                    r.fileBytes() < 0 ? "-" : String.format("%,.1f", r.fileBytes() / 1e6));
+        }
+    }
+
+    private static long generate(Scheme scheme, int count) {
+        long start = System.nanoTime();
+        int hash = 0;
+        for (int i = 0; i < count; i++) {
+            hash += scheme.ids().get().hashCode();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = hash;
+        return elapsed;
+    }
+
+    private static Result run(String[] properties, Scheme scheme, int rows, int batchSize, Path directory) throws IOException {
+        String[] args = Stream.concat(Stream.of("--server.port=0", "--seed.enabled=false", "--seed.force_users=false",
+                "--spring.main.banner-mode=off", "--logging.level.root=WARN", "--logging.level.ch.pingu.backend=WARN"), Arrays.stream(properties)).toArray(String[]::new);
+        double seconds;
+        double lastTenthSeconds;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class).run(args)) {
+            TransactionService service = context.getBean(TransactionService.class);
+            Random random = new Random(1);
+            long start = System.nanoTime();
+            long lastTenthStart = start;
+            int lastTenth = rows - rows / 10;
+            for (int done = 0; done < rows; ) {
+                if (done >= lastTenth && lastTenthStart == start) {
+                    lastTenthStart = System.nanoTime();
+                }
+                int n = Math.min(batchSize, rows - done);
+                List<Transaction> batch = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    batch.add(transaction(scheme.ids().get(), random));
+                }
+                service.createAll(batch);
+                done += n;
+            }
+            long end = System.nanoTime();
+            seconds = (end - start) / 1e9;
+            lastTenthSeconds = (end - lastTenthStart) / 1e9;
+        }
+        // measured after the database is closed, which compacts the file
+        return new Result(seconds, lastTenthSeconds, directory == null ? -1 : size(directory));
+    }
+
+    private static Transaction transaction(String id, Random random) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        t.setConsultantId(String.format("user-%03d", random.nextInt(50)));
+        t.setCustomerId(String.format("customer-%05d", random.nextInt(10_000)));
+        t.setSourceAmount(money(random));
+        t.setTargetAmount(money(random));
+        t.setExchangeRate(0.5 + random.nextDouble());
+        t.setExchangeRateVersionId("benchmark-version");
+        t.setExecutionDate(LocalDateTime.of(2026, 1, 1, 0, 0).plusMinutes(random.nextInt(60 * 24 * 90)));
+        t.setCreatedBy("benchmark");
+        t.setStatus("COMPLETED");
+        return t;
+    }
+
+    private static Transaction.MoneyDTO money(Random random) {
+        Transaction.MoneyDTO money = new Transaction.MoneyDTO();
+        money.setAmount((1 + random.nextInt(100_000)) + "." + String.format("%02d", random.nextInt(100)));
+        money.setCurrency(CURRENCIES[random.nextInt(CURRENCIES.length)]);
+        return money;
+    }
+
+    private static long size(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package ch.pingu.backend.util;
+
+import ch.pingu.backend.transactions.model.Transaction;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds an in-memory H2 transactions table and reports the latency of each
+ * listing and filter query without indexes and with the indexes declared on
+ * the Transaction entity. The queries have the shape Hibernate generates for
+ * the transaction endpoints; the indexes are read from the entity, so the
+ * benchmark always measures what the application creates.
+ *
+ * usage cli:
+ * cd backend
+ * mvn compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -Xmx4g -cp target/classes:$(cat target/classpath.txt) ch.pingu.backend.util.TransactionIndexBenchmark [rows] [runs]
+ */
+public class TransactionIndexBenchmark {
+
+    private static final String CREATE_TABLE = "create table transactions (exchange_rate float(53) not null, "
+            + "created_at timestamp(6), execution_date timestamp(6), reverted_at timestamp(6), consultant_id varchar(255), "
+            + "created_by varchar(255), customer_id varchar(255), exchange_rate_version_id varchar(255), id varchar(255) not null, "
+            + "revert_reason varchar(255), reverted_by varchar(255), source_amount varchar(255), source_currency varchar(255), "
+            + "status varchar(255), target_amount varchar(255), target_currency varchar(255), primary key (id))";
+
+    private static final String COLUMNS = "id, consultant_id, customer_id, source_amount, source_currency, "
+            + "target_amount, target_currency, exchange_rate, exchange_rate_version_id, execution_date, created_at, created_by, status";
+
+    private static final String[] CURRENCIES = {"CHF", "EUR", "USD", "GBP", "JPY", "CAD", "AUD", "CNY", "INR", "SEK"};
+    private static final String[] STATUSES = {"COMPLETED", "EXECUTED", "NOT_STARTED", "CANCELLED", "REVERTED"};
+    private static final int CONSULTANTS = 50;
+    private static final int CUSTOMERS = 10_000;
+    private static final int PAGE = 500;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private record BenchQuery(String name, String sql, Object... params) {}
+
+    public static void main(String[] args) throws SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+
+        // result reuse is disabled, otherwise H2 answers repeated identical queries from its cache
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:index-benchmark;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE", "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            long seedStart = System.nanoTime();
+            seed(connection, rows);
+            System.out.printf("Seeded %,d rows in %.1f s%n", rows, (System.nanoTime() - seedStart) / 1e9);
+
+            // a keyset position in the middle of the listing, as reached after paging
+            LocalDateTime middle = createdAt(rows / 2, rows);
+            String middleId = id(rows / 2);
+            LocalDateTime from = createdAt(rows / 3, rows);
+            LocalDateTime to = from.plusDays(7);
+
+            String keysetOrder = keysetOrder(null);
+            List<BenchQuery> queries = List.of(
+                    new BenchQuery("listing, first page",
+                            "select " + COLUMNS + " from transactions" + keysetOrder),
+                    new BenchQuery("listing, page at middle cursor",
+                            "select " + COLUMNS + " from transactions where created_at <= ? and (created_at < ? or (created_at = ? and id < ?))" + keysetOrder,
+                            ts(middle), ts(middle), ts(middle), middleId),
+                    new BenchQuery("consultant, first page",
+                            "select " + COLUMNS + " from transactions where consultant_id = ?" + keysetOrder("consultant_id"),
+                            "user-007"),
+                    new BenchQuery("consultant, all rows (legacy listing)",
+                            "select " + COLUMNS + " from transactions where consultant_id = ? order by created_at desc",
+                            "user-007"),
+                    new BenchQuery("status, first page",
+                            "select " + COLUMNS + " from transactions where status = ?" + keysetOrder("status"),
+                            "REVERTED"),
+                    new BenchQuery("status, total count",
+                            "select count(*) from transactions where status = ?",
+                            "REVERTED"),
+                    new BenchQuery("currency (source or target), first page",
+                            "select " + COLUMNS + " from transactions where source_currency = ? or target_currency = ?" + keysetOrder,
+                            "SEK", "SEK"),
+                    new BenchQuery("customer, first page",
+                            "select " + COLUMNS + " from transactions where customer_id = ?" + keysetOrder("customer_id"),
+                            "customer-04242"),
+                    new BenchQuery("execution date range, by execution date",
+                            "select " + COLUMNS + " from transactions where execution_date >= ? and execution_date < ? "
+                                    + "order by execution_date, id fetch first " + (PAGE + 1) + " rows only",
+                            ts(from), ts(to))
+            );
+
+            double[] without = measureAll(connection, queries, runs);
+
+            long indexStart = System.nanoTime();
+            createIndexes(connection);
+            System.out.printf("Created entity indexes in %.1f s%n%n", (System.nanoTime() - indexStart) / 1e9);
+
+            double[] with = measureAll(connection, queries, runs);
+
+            System.out.printf("%-42s %14s %14s %9s  %s%n", "query (median of " + runs + ")", "no index (ms)", "indexed (ms)", "speedup", "index used");
+            for (int i = 0; i < queries.size(); i++) {
+                System.out.printf("%-42s %14.2f %14.2f %8.1fx  %s%n", queries.get(i).name(), without[i], with[i],
+                        without[i] / with[i], indexUsed(connection, queries.get(i)));
+            }
+        }
+    }
+
+    private static void seed(Connection connection, int rows) throws SQLException {
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into transactions (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                LocalDateTime createdAt = createdAt(i, rows);
+                String source = CURRENCIES[random.nextInt(CURRENCIES.length)];
+                String target = CURRENCIES[random.nextInt(CURRENCIES.length)];
+                String consultant = String.format("user-%03d", random.nextInt(CONSULTANTS));
+                insert.setString(1, id(i));
+                insert.setString(2, consultant);
+                insert.setString(3, String.format("customer-%05d", random.nextInt(CUSTOMERS)));
+                insert.setString(4, String.valueOf(100 + random.nextInt(100_000)));
+                insert.setString(5, source);
+                insert.setString(6, String.valueOf(100 + random.nextInt(100_000)));
+                insert.setString(7, target);
+                insert.setDouble(8, 0.5 + random.nextDouble());
+                insert.setString(9, "seed-version");
+                insert.setTimestamp(10, ts(createdAt.plusMinutes(random.nextInt(60 * 24 * 3))));
+                insert.setTimestamp(11, ts(createdAt));
+                insert.setString(12, consultant);
+                insert.setString(13, STATUSES[random.nextInt(STATUSES.length)]);
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static void createIndexes(Connection connection) throws SQLException {
+        Table table = Transaction.class.getAnnotation(Table.class);
+        try (Statement statement = connection.createStatement()) {
+            for (Index index : table.indexes()) {
+                statement.execute("create index " + index.name() + " on " + table.name() + " (" + index.columnList() + ")");
+            }
+        }
+    }
+
+    private static double[] measureAll(Connection connection, List<BenchQuery> queries, int runs) throws SQLException {
+        double[] medians = new double[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            medians[i] = measure(connection, queries.get(i), runs);
+        }
+        return medians;
+    }
+
+    private static double measure(Connection connection, BenchQuery query, int runs) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(query.sql())) {
+            for (int p = 0; p < query.params().length; p++) {
+                statement.setObject(p + 1, query.params()[p]);
+            }
+            // warm-up
+            consume(statement);
+            List<Double> samples = new ArrayList<>(runs);
+            for (int r = 0; r < runs; r++) {
+                long start = System.nanoTime();
+                consume(statement);
+                samples.add((System.nanoTime() - start) / 1e6);
+            }
+            double[] sorted = samples.stream().mapToDouble(Double::doubleValue).toArray();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+    }
+
+    // same order as TransactionSpecifications.keysetOrder, including the fixed column the service sorts by first
+    private static String keysetOrder(String fixedColumn) {
+        return " order by " + (fixedColumn == null ? "" : fixedColumn + ", ")
+                + "created_at desc, id desc fetch first " + (PAGE + 1) + " rows only";
+    }
+
+    // index named in H2's plan, e.g. "/* PUBLIC.IDX_TRANSACTIONS_CREATED */"
+    private static String indexUsed(Connection connection, BenchQuery query) throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement("explain " + query.sql())) {
+            for (int p = 0; p < query.params().length; p++) {
+                explain.setObject(p + 1, query.params()[p]);
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                String text = plan.next() ? plan.getString(1) : "";
+                int start = text.indexOf("/* PUBLIC.");
+                int end = start < 0 ? -1 : text.indexOf(" ", start + 10);
+                String index = start < 0 || end < 0 ? "?" : text.substring(start + 10, end);
+                return text.contains("index sorted") ? index + " (sorted)" : index;
+            }
+        }
+    }
+
+    private static long consume(PreparedStatement statement) throws SQLException {
+        long count = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int c = 1; c <= columns; c++) {
+                    resultSet.getObject(c);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // rows are spread evenly over two years, with some sharing a timestamp so the id tie-break matters
+    private static LocalDateTime createdAt(int row, int rows) {
+        long twoYearsInSeconds = 2L * 365 * 24 * 3600;
+        return START.plusSeconds(twoYearsInSeconds * (row / 4 * 4L) / rows);
+    }
+
+    private static String id(int row) {
+        return String.format("txn-%08d", row);
+    }
+
+    private static Timestamp ts(LocalDateTime dateTime) {
+        return Timestamp.valueOf(dateTime);
+    }
+}
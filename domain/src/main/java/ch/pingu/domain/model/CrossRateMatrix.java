@@ -0,0 +1,150 @@
+package ch.pingu.domain.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed cross rates of an exchange rate version.
+ *
+ * Holds a dense k x k table over the k currencies of the version, filled once
+ * from the version's rates. Currencies are mapped to table slots through their
+ * registry id, so lookups are plain array reads and do not allocate.
+ * Pairs whose rates are missing from the version are stored as null.
+ */
+public final class CrossRateMatrix {
+
+    /**
+     * Number of decimals of every cross rate; rates in micros are scaled by 10^SCALE
+     */
+    public static final int SCALE = 6;
+
+    private final int[] slotById;
+    private final int size;
+    private final BigDecimal[] rates;
+    private final double[] doubleRates;
+    private final long[] rateMicros;
+
+    private CrossRateMatrix(int[] slotById, int size) {
+        this.slotById = slotById;
+        this.size = size;
+        this.rates = new BigDecimal[size * size];
+        this.doubleRates = new double[size * size];
+        this.rateMicros = new long[size * size];
+    }
+
+    public static CrossRateMatrix build(Currency baseCurrency, Map<Currency, Double> versionRates) {
+        Set<Currency> members = new LinkedHashSet<>();
+        members.add(baseCurrency);
+        members.addAll(versionRates.keySet());
+        Currency[] currencies = members.toArray(new Currency[0]);
+
+        int maxId = 0;
+        for (Currency currency : currencies) {
+            maxId = Math.max(maxId, currency.getId());
+        }
+        int[] slotById = new int[maxId + 1];
+        Arrays.fill(slotById, -1);
+        for (int slot = 0; slot < currencies.length; slot++) {
+            slotById[currencies[slot].getId()] = slot;
+        }
+
+        CrossRateMatrix matrix = new CrossRateMatrix(slotById, currencies.length);
+        for (int s = 0; s < currencies.length; s++) {
+            for (int t = 0; t < currencies.length; t++) {
+                BigDecimal rate = computeOrNull(currencies[s], currencies[t], baseCurrency, versionRates);
+                if (rate != null) {
+                    int index = s * matrix.size + t;
+                    matrix.rates[index] = rate;
+                    matrix.doubleRates[index] = rate.doubleValue();
+                    matrix.rateMicros[index] = rate.setScale(SCALE).unscaledValue().longValueExact();
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Computes a single cross rate directly from the version's rates.
+     * Returns null if a required rate is missing.
+     */
+    public static BigDecimal compute(Currency source, Currency target,
+                                     Currency baseCurrency, Map<Currency, Double> versionRates) {
+        if (source == target) {
+            return BigDecimal.ONE;
+        }
+
+        if (source == baseCurrency) {
+            Double rate = versionRates.get(target);
+            return rate == null ? null : BigDecimal.valueOf(rate).setScale(SCALE, RoundingMode.HALF_UP);
+        }
+
+        if (target == baseCurrency) {
+            Double rate = versionRates.get(source);
+            return rate == null ? null : BigDecimal.ONE.divide(BigDecimal.valueOf(rate), SCALE, RoundingMode.HALF_UP);
+        }
+
+        Double sourceRate = versionRates.get(source);
+        Double targetRate = versionRates.get(target);
+        if (sourceRate == null || targetRate == null) {
+            return null;
+        }
+        return BigDecimal.valueOf(targetRate)
+            .divide(BigDecimal.valueOf(sourceRate), SCALE, RoundingMode.HALF_UP);
+    }
+
+    // a zero rate makes only the pairs that divide by it unavailable, not the whole version
+    private static BigDecimal computeOrNull(Currency source, Currency target,
+                                           Currency baseCurrency, Map<Currency, Double> versionRates) {
+        try {
+            return compute(source, target, baseCurrency, versionRates);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the rate to convert from source to target, or null if unavailable
+     */
+    public BigDecimal rate(Currency source, Currency target) {
+        int index = index(source, target);
+        return index < 0 ? null : rates[index];
+    }
+
+    public double rateAsDouble(Currency source, Currency target) {
+        return doubleRates[availableIndex(source, target)];
+    }
+
+    /**
+     * Returns the rate as a fixed-point long with {@link #SCALE} decimals, e.g. 1.050000 as 1050000
+     */
+    public long rateInMicros(Currency source, Currency target) {
+        return rateMicros[availableIndex(source, target)];
+    }
+
+    public boolean isAvailable(Currency source, Currency target) {
+        return rate(source, target) != null;
+    }
+
+    private int index(Currency source, Currency target) {
+        int s = slot(source);
+        int t = slot(target);
+        return s < 0 || t < 0 ? -1 : s * size + t;
+    }
+
+    private int availableIndex(Currency source, Currency target) {
+        int index = index(source, target);
+        if (index < 0 || rates[index] == null) {
+            throw new IllegalArgumentException("No cross rate from " + source + " to " + target);
+        }
+        return index;
+    }
+
+    private int slot(Currency currency) {
+        int id = currency.getId();
+        return id < slotById.length ? slotById[id] : -1;
+    }
+}
@@ -1,47 +1,161 @@
 package ch.pingu.domain.model;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * Supported currencies in the system
+ * Currency known to the system.
+ *
+ * Currencies are interned in a registry: every code maps to exactly one
+ * instance, so they can be compared with ==, and each instance gets a dense
+ * integer id that conversion tables use as index. The common currencies are
+ * predefined; rate versions may register further codes at runtime.
  */
-public enum Currency {
-    CHF("Swiss Franc", "CHF"),
-    EUR("Euro", "EUR"),
-    USD("US Dollar", "USD"),
-    GBP("British Pound", "GBP"),
-    JPY("Japanese Yen", "JPY"),
-    CAD("Canadian Dollar", "CAD"),
-    AUD("Australian Dollar", "AUD"),
-    CNY("Chinese Yuan", "CNY"),
-    INR("Indian Rupee", "INR"),
-    SEK("Swedish Krona", "SEK");
-    
+public final class Currency {
+
+    private static final int DEFAULT_MINOR_UNITS = 2;
+
+    private static final Map<String, Currency> BY_CODE = new ConcurrentHashMap<>();
+    private static final Object REGISTRATION_LOCK = new Object();
+    private static volatile Currency[] byId = new Currency[0];
+
+    public static final Currency CHF = register("CHF", "Swiss Franc", 2);
+    public static final Currency EUR = register("EUR", "Euro", 2);
+    public static final Currency USD = register("USD", "US Dollar", 2);
+    public static final Currency GBP = register("GBP", "British Pound", 2);
+    public static final Currency JPY = register("JPY", "Japanese Yen", 0);
+    public static final Currency CAD = register("CAD", "Canadian Dollar", 2);
+    public static final Currency AUD = register("AUD", "Australian Dollar", 2);
+    public static final Currency CNY = register("CNY", "Chinese Yuan", 2);
+    public static final Currency INR = register("INR", "Indian Rupee", 2);
+    public static final Currency SEK = register("SEK", "Swedish Krona", 2);
+
+    private final int id;
     private final String displayName;
     private final String code;
-    
-    Currency(String displayName, String code) {
+    private final int minorUnits;
+
+    private Currency(int id, String displayName, String code, int minorUnits) {
+        this.id = id;
         this.displayName = displayName;
         this.code = code;
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * Dense registry id, starting at 0 in registration order
+     */
+    public int getId() {
+        return id;
     }
-    
+
     public String getDisplayName() {
         return displayName;
     }
-    
+
     public String getCode() {
         return code;
     }
-    
+
+    /**
+     * Number of decimal places of the currency's minor unit (ISO 4217), e.g. 2 for CHF, 0 for JPY
+     */
+    public int getMinorUnits() {
+        return minorUnits;
+    }
+
     @Override
     public String toString() {
         return code;
     }
-    
+
+    /**
+     * Looks up a registered currency, ignoring case
+     */
     public static Currency fromCode(String code) {
-        for (Currency currency : values()) {
-            if (currency.code.equalsIgnoreCase(code)) {
-                return currency;
+        Currency currency = lookup(code);
+        if (currency == null) {
+            throw new IllegalArgumentException("Unknown currency code: " + code);
+        }
+        return currency;
+    }
+
+    /**
+     * Returns the registered currency for the code, registering it with
+     * default settings if it is not known yet
+     */
+    public static Currency register(String code) {
+        Currency currency = lookup(code);
+        return currency != null ? currency : register(code, code == null ? null : code.toUpperCase(Locale.ROOT), DEFAULT_MINOR_UNITS);
+    }
+
+    public static Currency register(String code, String displayName, int minorUnits) {
+        if (!isValidCode(code)) {
+            throw new IllegalArgumentException("Invalid currency code: " + code);
+        }
+        if (minorUnits < 0 || minorUnits > 4) {
+            throw new IllegalArgumentException("Invalid minor units for " + code + ": " + minorUnits);
+        }
+        String key = code.toUpperCase(Locale.ROOT);
+        synchronized (REGISTRATION_LOCK) {
+            Currency existing = BY_CODE.get(key);
+            if (existing != null) {
+                return existing;
             }
+            Currency[] current = byId;
+            Currency currency = new Currency(current.length, displayName, key, minorUnits);
+            Currency[] next = Arrays.copyOf(current, current.length + 1);
+            next[currency.id] = currency;
+            BY_CODE.put(key, currency);
+            byId = next;
+            return currency;
+        }
+    }
+
+    /**
+     * Whether the code has the ISO 4217 shape of three letters
+     */
+    public static boolean isValidCode(String code) {
+        if (code == null || code.length() != 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static Currency byId(int id) {
+        return byId[id];
+    }
+
+    /**
+     * Number of registered currencies; ids range from 0 to count() - 1
+     */
+    public static int count() {
+        return byId.length;
+    }
+
+    /**
+     * All registered currencies in id order
+     */
+    public static Currency[] values() {
+        return byId.clone();
+    }
+
+    private static Currency lookup(String code) {
+        if (code == null) {
+            return null;
+        }
+        Currency currency = BY_CODE.get(code);
+        if (currency == null) {
+            currency = BY_CODE.get(code.toUpperCase(Locale.ROOT));
         }
-        throw new IllegalArgumentException("Unknown currency code: " + code);
+        return currency;
     }
 }
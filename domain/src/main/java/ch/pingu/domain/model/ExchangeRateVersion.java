@@ -4,7 +4,6 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * Represents a versioned set of exchange rates with a base currency
@@ -18,6 +17,7 @@ public class ExchangeRateVersion {
     private final LocalDateTime uploadedAt;
     private final String uploadedBy;
     private boolean active;
+    private volatile CrossRateMatrix crossRates;
     
     public ExchangeRateVersion(String id, String versionName, Currency baseCurrency, 
                                Map<Currency, Double> rates, LocalDateTime uploadedAt, 
@@ -34,7 +34,7 @@ public class ExchangeRateVersion {
     public static ExchangeRateVersion create(String versionName, Currency baseCurrency, 
                                             Map<Currency, Double> rates, String uploadedBy) {
         return new ExchangeRateVersion(
-            UUID.randomUUID().toString(),
+            TimeOrderedId.next(),
             versionName,
             baseCurrency,
             rates,
@@ -44,6 +44,15 @@ public class ExchangeRateVersion {
         );
     }
     
+    /**
+     * An independent copy, e.g. to hand out from a cache; the cross rates, once built, are shared
+     */
+    public ExchangeRateVersion copy() {
+        ExchangeRateVersion copy = new ExchangeRateVersion(id, versionName, baseCurrency, rates, uploadedAt, uploadedBy, active);
+        copy.crossRates = crossRates;
+        return copy;
+    }
+    
     public String getId() {
         return id;
     }
@@ -64,6 +73,18 @@ public class ExchangeRateVersion {
         return rates.get(currency);
     }
     
+    /**
+     * Cross rates of this version, built on first use and reused afterwards
+     */
+    public CrossRateMatrix getCrossRates() {
+        CrossRateMatrix matrix = crossRates;
+        if (matrix == null) {
+            matrix = CrossRateMatrix.build(baseCurrency, rates);
+            crossRates = matrix;
+        }
+        return matrix;
+    }
+    
     public LocalDateTime getUploadedAt() {
         return uploadedAt;
     }
@@ -0,0 +1,147 @@
+package ch.pingu.domain.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * Value Object representing a monetary amount as a count of the currency's
+ * minor units, e.g. CHF 12.34 as 1234 and JPY 500 as 500.
+ *
+ * Arithmetic and conversion work on longs and only fall back to BigDecimal
+ * when an intermediate product would overflow. The static methods operate
+ * on raw minor units and never allocate.
+ */
+public final class FixedPointMoney {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L
+    };
+
+    private final long minorUnits;
+    private final Currency currency;
+
+    private FixedPointMoney(long minorUnits, Currency currency) {
+        if (minorUnits < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative");
+        }
+        if (currency == null) {
+            throw new IllegalArgumentException("Currency cannot be null");
+        }
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static FixedPointMoney ofMinor(long minorUnits, Currency currency) {
+        return new FixedPointMoney(minorUnits, currency);
+    }
+
+    /**
+     * Rounds the amount half-up to the currency's minor unit
+     */
+    public static FixedPointMoney of(BigDecimal amount, Currency currency) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) < 0) {
+            throw new IllegalArgumentException("Amount cannot be null or negative");
+        }
+        if (currency == null) {
+            throw new IllegalArgumentException("Currency cannot be null");
+        }
+        long minor = amount.setScale(currency.getMinorUnits(), RoundingMode.HALF_UP)
+            .unscaledValue()
+            .longValueExact();
+        return new FixedPointMoney(minor, currency);
+    }
+
+    public static FixedPointMoney of(Money money) {
+        return of(money.getAmount(), money.getCurrency());
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(minorUnits, currency.getMinorUnits());
+    }
+
+    public Money toMoney() {
+        return new Money(getAmount(), currency);
+    }
+
+    public FixedPointMoney plus(FixedPointMoney other) {
+        requireSameCurrency(other);
+        return new FixedPointMoney(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public FixedPointMoney minus(FixedPointMoney other) {
+        requireSameCurrency(other);
+        return new FixedPointMoney(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public FixedPointMoney times(long factor) {
+        return new FixedPointMoney(Math.multiplyExact(minorUnits, factor), currency);
+    }
+
+    /**
+     * Converts using a rate given in micros (see {@link CrossRateMatrix#rateInMicros})
+     */
+    public FixedPointMoney convert(Currency targetCurrency, long rateMicros) {
+        if (this.currency == targetCurrency) {
+            return this;
+        }
+        long converted = convertMinor(minorUnits, currency.getMinorUnits(),
+            targetCurrency.getMinorUnits(), rateMicros);
+        return new FixedPointMoney(converted, targetCurrency);
+    }
+
+    /**
+     * Converts a non-negative amount in source minor units to target minor units,
+     * rounding half-up. Equivalent to amount * rate rounded to the target scale.
+     */
+    public static long convertMinor(long minorUnits, int sourceScale, int targetScale, long rateMicros) {
+        int shift = CrossRateMatrix.SCALE + sourceScale - targetScale;
+        try {
+            long product = Math.multiplyExact(minorUnits, rateMicros);
+            if (shift <= 0) {
+                return Math.multiplyExact(product, POWERS_OF_TEN[-shift]);
+            }
+            long divisor = POWERS_OF_TEN[shift];
+            return Math.addExact(product, divisor / 2) / divisor;
+        } catch (ArithmeticException overflow) {
+            return BigDecimal.valueOf(minorUnits)
+                .multiply(BigDecimal.valueOf(rateMicros))
+                .movePointLeft(shift)
+                .setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
+        }
+    }
+
+    private void requireSameCurrency(FixedPointMoney other) {
+        if (other.currency != currency) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FixedPointMoney that = (FixedPointMoney) o;
+        return minorUnits == that.minorUnits && currency == that.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minorUnits, currency);
+    }
+
+    @Override
+    public String toString() {
+        return currency.getCode() + " " + getAmount().toPlainString();
+    }
+}
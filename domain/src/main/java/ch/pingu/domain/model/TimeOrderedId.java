@@ -0,0 +1,35 @@
+package ch.pingu.domain.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates ids as version 7 UUIDs (RFC 9562): 48 bits of Unix milliseconds,
+ * a 12 bit counter within the millisecond and 62 random bits.
+ *
+ * The ids have the same 36 character form as random UUIDs, so they can sit
+ * next to existing ids, and their text sorts in creation order. Ids from this
+ * process are strictly increasing across all threads: millisecond and counter
+ * advance through one compare-and-set, and a counter running over moves into
+ * the next millisecond. The random bits come from ThreadLocalRandom; they keep
+ * ids from different processes apart but are not meant to be unguessable.
+ */
+public final class TimeOrderedId {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private TimeOrderedId() {
+    }
+
+    public static String next() {
+        return nextUuid().toString();
+    }
+
+    public static UUID nextUuid() {
+        long stamp = LAST.accumulateAndGet(System.currentTimeMillis() << 12, (last, now) -> Math.max(now, last + 1));
+        long high = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xFFFL);
+        long low = ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL | 0x8000_0000_0000_0000L;
+        return new UUID(high, low);
+    }
+}
@@ -2,7 +2,6 @@ package ch.pingu.domain.model;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * Represents a currency exchange transaction
@@ -46,7 +45,7 @@ public class Transaction {
                                     double exchangeRate, String exchangeRateVersionId,
                                     LocalDateTime executionDate, String createdBy) {
         return new Transaction(
-            UUID.randomUUID().toString(),
+            TimeOrderedId.next(),
             consultantId,
             customerId,
             sourceAmount,
@@ -77,6 +76,13 @@ public class Transaction {
         this.revertedBy = revertedBy;
     }
     
+    // the revert details of a transaction read back from storage or the server
+    public void restoreRevert(String reason, LocalDateTime revertedAt, String revertedBy) {
+        this.revertReason = reason;
+        this.revertedAt = revertedAt;
+        this.revertedBy = revertedBy;
+    }
+    
     public String getId() {
         return id;
     }
@@ -0,0 +1,510 @@
+package ch.pingu.domain.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Column store for large lists of transactions held on the client.
+ *
+ * Every field is kept in a primitive array with one slot per row instead of
+ * one object graph per transaction. Ids in the canonical UUID form are two
+ * longs; consultant, customer, rate version, user names and revert reasons are
+ * codes into per-column dictionaries; currencies are byte codes into the
+ * table's own list of the currencies it holds, status is a byte, amounts
+ * are longs in hundredths (the scale of Money) and timestamps are epoch
+ * microseconds in UTC. Rows are read through {@link Row} views, which hold
+ * nothing but their position and decode a field only when it is asked for.
+ *
+ * Rows can be appended and overwritten but not removed. Rows are found by id
+ * through a hash index of row numbers, built on the first lookup. The table is
+ * not safe for concurrent use while it is written.
+ */
+public final class TransactionTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_CODE = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int MAX_CURRENCIES = 256;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private int size;
+    private long[] idHigh;
+    private long[] idLow;
+    // only allocated once an id is not a canonical UUID; null for the rows whose id is
+    private String[] otherIds;
+    private int[] consultants;
+    private int[] customers;
+    private byte[] sourceCurrencies;
+    private long[] sourceCents;
+    private byte[] targetCurrencies;
+    private long[] targetCents;
+    private double[] exchangeRates;
+    private int[] rateVersions;
+    private long[] executionTimes;
+    private long[] createdTimes;
+    private int[] creators;
+    private byte[] statuses;
+    private int[] revertReasons;
+    private long[] revertedTimes;
+    private int[] reverters;
+
+    private final Dictionary consultantIds = new Dictionary();
+    private final Dictionary customerIds = new Dictionary();
+    private final Dictionary rateVersionIds = new Dictionary();
+    // created by and reverted by name the same users
+    private final Dictionary users = new Dictionary();
+    private final Dictionary reasons = new Dictionary();
+    // byte code to currency for both amount columns, independent of the registry's ids
+    private final List<Currency> currencies = new ArrayList<>();
+    private final Map<Currency, Byte> currencyCodes = new HashMap<>();
+    // open-addressing hash from id to the newest row holding it, as row + 1 with 0 for a free
+    // slot; built on the first lookup, then kept up to date by add and set
+    private int[] idSlots;
+    private int indexedIds;
+
+    public TransactionTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TransactionTable(int capacity) {
+        allocate(Math.max(capacity, 16));
+    }
+
+    public static TransactionTable of(List<Transaction> transactions) {
+        TransactionTable table = new TransactionTable(transactions.size());
+        transactions.forEach(table::add);
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends the transaction and returns its row
+     */
+    public int add(Transaction transaction) {
+        if (size == exchangeRates.length) {
+            allocate(size + (size >> 1));
+        }
+        write(size, transaction);
+        int row = size++;
+        if (idSlots != null) {
+            index(row);
+        }
+        return row;
+    }
+
+    /**
+     * Overwrites the row with the transaction's current state, e.g. after it was reverted
+     */
+    public void set(int row, Transaction transaction) {
+        Objects.checkIndex(row, size);
+        String before = idSlots == null ? null : idAt(row);
+        write(row, transaction);
+        // a row changing its id is rare enough to rebuild the index for
+        if (idSlots != null && !before.equals(idAt(row))) {
+            buildIndex();
+        }
+    }
+
+    /**
+     * A new view of the row; views hold only the row's position
+     */
+    public Row row(int row) {
+        Objects.checkIndex(row, size);
+        return new Row(row);
+    }
+
+    /**
+     * Visits every row with one view that is moved from row to row; keep
+     * {@link Row#index()} instead of the view to refer to a row later
+     */
+    public void forEach(Consumer<Row> action) {
+        Row view = new Row(0);
+        for (int row = 0; row < size; row++) {
+            view.index = row;
+            action.accept(view);
+        }
+    }
+
+    /**
+     * The last row holding the id, or -1; a transaction added again after a change is found in its newest row.
+     * Looked up in the id index, so the cost does not grow with the table
+     */
+    public int lastIndexOf(String id) {
+        if (id == null) {
+            return -1;
+        }
+        if (idSlots == null) {
+            buildIndex();
+        }
+        int mask = idSlots.length - 1;
+        if (isCanonicalUuid(id)) {
+            long high = uuidHigh(id);
+            long low = uuidLow(id);
+            for (int slot = hash(high, low) & mask; idSlots[slot] != 0; slot = (slot + 1) & mask) {
+                int row = idSlots[slot] - 1;
+                if (idLow[row] == low && idHigh[row] == high && (otherIds == null || otherIds[row] == null)) {
+                    return row;
+                }
+            }
+        } else if (otherIds != null) {
+            for (int slot = hash(id) & mask; idSlots[slot] != 0; slot = (slot + 1) & mask) {
+                int row = idSlots[slot] - 1;
+                if (id.equals(otherIds[row])) {
+                    return row;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read access to one row of the table
+     */
+    public final class Row {
+
+        private int index;
+
+        private Row(int index) {
+            this.index = index;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public String getId() {
+            if (otherIds != null && otherIds[index] != null) {
+                return otherIds[index];
+            }
+            return formatUuid(idHigh[index], idLow[index]);
+        }
+
+        public String getConsultantId() {
+            return consultantIds.get(consultants[index]);
+        }
+
+        public String getCustomerId() {
+            return customerIds.get(customers[index]);
+        }
+
+        public Currency getSourceCurrency() {
+            return currencies.get(sourceCurrencies[index] & 0xFF);
+        }
+
+        /**
+         * The source amount in hundredths
+         */
+        public long getSourceCents() {
+            return sourceCents[index];
+        }
+
+        public Money getSourceAmount() {
+            return new Money(BigDecimal.valueOf(sourceCents[index], 2), getSourceCurrency());
+        }
+
+        public Currency getTargetCurrency() {
+            return currencies.get(targetCurrencies[index] & 0xFF);
+        }
+
+        /**
+         * The target amount in hundredths
+         */
+        public long getTargetCents() {
+            return targetCents[index];
+        }
+
+        public Money getTargetAmount() {
+            return new Money(BigDecimal.valueOf(targetCents[index], 2), getTargetCurrency());
+        }
+
+        public double getExchangeRate() {
+            return exchangeRates[index];
+        }
+
+        public String getExchangeRateVersionId() {
+            return rateVersionIds.get(rateVersions[index]);
+        }
+
+        /**
+         * Execution date as microseconds since the epoch in UTC, Long.MIN_VALUE if unset
+         */
+        public long getExecutionEpochMicros() {
+            return executionTimes[index];
+        }
+
+        public LocalDateTime getExecutionDate() {
+            return toDateTime(executionTimes[index]);
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return toDateTime(createdTimes[index]);
+        }
+
+        public String getCreatedBy() {
+            return users.get(creators[index]);
+        }
+
+        public TransactionStatus getStatus() {
+            return STATUSES[statuses[index]];
+        }
+
+        public boolean isReverted() {
+            return statuses[index] == TransactionStatus.REVERTED.ordinal();
+        }
+
+        public String getRevertReason() {
+            return reasons.get(revertReasons[index]);
+        }
+
+        public LocalDateTime getRevertedAt() {
+            return toDateTime(revertedTimes[index]);
+        }
+
+        public String getRevertedBy() {
+            return users.get(reverters[index]);
+        }
+
+        /**
+         * A new transaction object with the row's state
+         */
+        public Transaction toTransaction() {
+            Transaction transaction = new Transaction(getId(), getConsultantId(), getCustomerId(),
+                    getSourceAmount(), getTargetAmount(), getExchangeRate(), getExchangeRateVersionId(),
+                    getExecutionDate(), getCreatedAt(), getCreatedBy(), getStatus());
+            if (isReverted()) {
+                transaction.restoreRevert(getRevertReason(), getRevertedAt(), getRevertedBy());
+            }
+            return transaction;
+        }
+    }
+
+    private void write(int row, Transaction t) {
+        String id = t.getId();
+        if (isCanonicalUuid(id)) {
+            idHigh[row] = uuidHigh(id);
+            idLow[row] = uuidLow(id);
+            if (otherIds != null) {
+                otherIds[row] = null;
+            }
+        } else {
+            if (otherIds == null) {
+                otherIds = new String[exchangeRates.length];
+            }
+            otherIds[row] = id;
+        }
+        consultants[row] = consultantIds.code(t.getConsultantId());
+        customers[row] = customerIds.code(t.getCustomerId());
+        sourceCurrencies[row] = currencyByte(t.getSourceAmount().getCurrency());
+        sourceCents[row] = cents(t.getSourceAmount());
+        targetCurrencies[row] = currencyByte(t.getTargetAmount().getCurrency());
+        targetCents[row] = cents(t.getTargetAmount());
+        exchangeRates[row] = t.getExchangeRate();
+        rateVersions[row] = rateVersionIds.code(t.getExchangeRateVersionId());
+        executionTimes[row] = toMicros(t.getExecutionDate());
+        createdTimes[row] = toMicros(t.getCreatedAt());
+        creators[row] = users.code(t.getCreatedBy());
+        statuses[row] = (byte) t.getStatus().ordinal();
+        revertReasons[row] = reasons.code(t.getRevertReason());
+        revertedTimes[row] = toMicros(t.getRevertedAt());
+        reverters[row] = users.code(t.getRevertedBy());
+    }
+
+    private String idAt(int row) {
+        return otherIds != null && otherIds[row] != null ? otherIds[row] : formatUuid(idHigh[row], idLow[row]);
+    }
+
+    private void buildIndex() {
+        idSlots = new int[Math.max(16, Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1)];
+        indexedIds = 0;
+        for (int row = 0; row < size; row++) {
+            index(row);
+        }
+    }
+
+    // rows are indexed in ascending order, so a later row with the same id takes over the slot
+    private void index(int row) {
+        boolean other = otherIds != null && otherIds[row] != null;
+        int mask = idSlots.length - 1;
+        int slot = (other ? hash(otherIds[row]) : hash(idHigh[row], idLow[row])) & mask;
+        for (; idSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int indexed = idSlots[slot] - 1;
+            boolean same = other
+                    ? otherIds[row].equals(otherIds[indexed])
+                    : (otherIds == null || otherIds[indexed] == null) && idHigh[indexed] == idHigh[row] && idLow[indexed] == idLow[row];
+            if (same) {
+                idSlots[slot] = row + 1;
+                return;
+            }
+        }
+        idSlots[slot] = row + 1;
+        // at most half full, so probe runs stay short
+        if (++indexedIds * 2 > idSlots.length) {
+            buildIndex();
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        idHigh = grow(idHigh, capacity);
+        idLow = grow(idLow, capacity);
+        otherIds = otherIds == null ? null : Arrays.copyOf(otherIds, capacity);
+        consultants = grow(consultants, capacity);
+        customers = grow(customers, capacity);
+        sourceCurrencies = grow(sourceCurrencies, capacity);
+        sourceCents = grow(sourceCents, capacity);
+        targetCurrencies = grow(targetCurrencies, capacity);
+        targetCents = grow(targetCents, capacity);
+        exchangeRates = exchangeRates == null ? new double[capacity] : Arrays.copyOf(exchangeRates, capacity);
+        rateVersions = grow(rateVersions, capacity);
+        executionTimes = grow(executionTimes, capacity);
+        createdTimes = grow(createdTimes, capacity);
+        creators = grow(creators, capacity);
+        statuses = grow(statuses, capacity);
+        revertReasons = grow(revertReasons, capacity);
+        revertedTimes = grow(revertedTimes, capacity);
+        reverters = grow(reverters, capacity);
+    }
+
+    private static long[] grow(long[] column, int capacity) {
+        return column == null ? new long[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private static int[] grow(int[] column, int capacity) {
+        return column == null ? new int[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private static byte[] grow(byte[] column, int capacity) {
+        return column == null ? new byte[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private byte currencyByte(Currency currency) {
+        Byte code = currencyCodes.get(currency);
+        if (code != null) {
+            return code;
+        }
+        if (currencies.size() == MAX_CURRENCIES) {
+            throw new IllegalStateException("A transaction table holds at most " + MAX_CURRENCIES + " different currencies");
+        }
+        byte next = (byte) currencies.size();
+        currencies.add(currency);
+        currencyCodes.put(currency, next);
+        return next;
+    }
+
+    // Money always has two decimal places
+    private static long cents(Money money) {
+        return money.getAmount().unscaledValue().longValueExact();
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        if (time == null) {
+            return NO_TIME;
+        }
+        return Math.addExact(Math.multiplyExact(time.toEpochSecond(ZoneOffset.UTC), 1_000_000L), time.getNano() / 1_000);
+    }
+
+    private static LocalDateTime toDateTime(long micros) {
+        if (micros == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    // lower case 8-4-4-4-12 hex digits, the form UUID.toString() produces, so the id reads back unchanged
+    private static boolean isCanonicalUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23
+                    ? c == '-'
+                    : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long uuidHigh(String id) {
+        return parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+    }
+
+    private static long uuidLow(String id) {
+        return parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+    }
+
+    private static long parseHex(String s, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value << 4 | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static String formatUuid(long high, long low) {
+        char[] chars = new char[36];
+        hex(chars, 0, high >>> 32, 8);
+        chars[8] = '-';
+        hex(chars, 9, high >>> 16, 4);
+        chars[13] = '-';
+        hex(chars, 14, high, 4);
+        chars[18] = '-';
+        hex(chars, 19, low >>> 48, 4);
+        chars[23] = '-';
+        hex(chars, 24, low, 12);
+        return new String(chars);
+    }
+
+    private static void hex(char[] chars, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[offset + i] = Character.forDigit((int) (value & 0xF), 16);
+            value >>>= 4;
+        }
+    }
+
+    // every distinct value is stored once and rows refer to it by its position
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            if (value == null) {
+                return NO_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String get(int code) {
+            return code == NO_CODE ? null : values.get(code);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package ch.pingu.domain.service;
 import ch.pingu.domain.model.*;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 /**
  * Domain service for currency conversion operations
@@ -24,49 +23,56 @@ public class CurrencyConversionService {
         return source.convert(targetCurrency, rate);
     }
     
+    /**
+     * Converts a fixed-point amount, rounding to the target currency's minor unit
+     */
+    public FixedPointMoney convert(FixedPointMoney source, Currency targetCurrency, ExchangeRateVersion rateVersion) {
+        if (source.getCurrency() == targetCurrency) {
+            return source;
+        }
+        
+        CrossRateMatrix crossRates = rateVersion.getCrossRates();
+        if (!crossRates.isAvailable(source.getCurrency(), targetCurrency)) {
+            throw missingRate(source.getCurrency(), targetCurrency, rateVersion.getBaseCurrency());
+        }
+        return source.convert(targetCurrency, crossRates.rateInMicros(source.getCurrency(), targetCurrency));
+    }
+    
     public BigDecimal calculateExchangeRate(Currency source, Currency target, 
                                            ExchangeRateVersion rateVersion) {
         if (source == target) {
             return BigDecimal.ONE;
         }
         
-        Currency baseCurrency = rateVersion.getBaseCurrency();
-        
-        if (source == baseCurrency) {
-            Double rate = rateVersion.getRate(target);
-            if (rate == null) {
-                throw new IllegalArgumentException("Exchange rate not found for " + target);
-            }
-            return BigDecimal.valueOf(rate).setScale(6, RoundingMode.HALF_UP);
+        BigDecimal rate = rateVersion.getCrossRates().rate(source, target);
+        if (rate == null) {
+            throw missingRate(source, target, rateVersion.getBaseCurrency());
         }
-        
-        if (target == baseCurrency) {
-            Double rate = rateVersion.getRate(source);
-            if (rate == null) {
-                throw new IllegalArgumentException("Exchange rate not found for " + source);
-            }
-            return BigDecimal.ONE.divide(
-                BigDecimal.valueOf(rate), 
-                6, 
-                RoundingMode.HALF_UP
-            );
+        return rate;
+    }
+    
+    public double getExchangeRateAsDouble(Currency source, Currency target, 
+                                         ExchangeRateVersion rateVersion) {
+        if (source == target) {
+            return 1.0;
         }
         
-        Double sourceRate = rateVersion.getRate(source);
-        Double targetRate = rateVersion.getRate(target);
-        
-        if (sourceRate == null || targetRate == null) {
-            throw new IllegalArgumentException(
-                "Exchange rates not found for conversion from " + source + " to " + target
-            );
+        CrossRateMatrix crossRates = rateVersion.getCrossRates();
+        if (!crossRates.isAvailable(source, target)) {
+            throw missingRate(source, target, rateVersion.getBaseCurrency());
         }
-        
-        return BigDecimal.valueOf(targetRate)
-            .divide(BigDecimal.valueOf(sourceRate), 6, RoundingMode.HALF_UP);
+        return crossRates.rateAsDouble(source, target);
     }
     
-    public double getExchangeRateAsDouble(Currency source, Currency target, 
-                                         ExchangeRateVersion rateVersion) {
-        return calculateExchangeRate(source, target, rateVersion).doubleValue();
+    private IllegalArgumentException missingRate(Currency source, Currency target, Currency baseCurrency) {
+        if (source == baseCurrency) {
+            return new IllegalArgumentException("Exchange rate not found for " + target);
+        }
+        if (target == baseCurrency) {
+            return new IllegalArgumentException("Exchange rate not found for " + source);
+        }
+        return new IllegalArgumentException(
+            "Exchange rates not found for conversion from " + source + " to " + target
+        );
     }
 }
@@ -0,0 +1,416 @@
+package ch.pingu.domain.service;
+
+import ch.pingu.domain.model.Currency;
+import ch.pingu.domain.model.Transaction;
+import ch.pingu.domain.model.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index over a list of transactions for combined filter queries.
+ *
+ * Status and currency are bitmaps with one bit per transaction, execution
+ * dates are epoch days sorted together with their row positions, and
+ * consultant and customer map to the ascending positions of their rows.
+ * A query drives its scan from the most selective of these and checks the
+ * remaining criteria per candidate in the same pass, so no intermediate
+ * lists are built. Results are evaluated by their terminal methods and
+ * always come in the order of the indexed list.
+ *
+ * The index is a snapshot of the list it was built from. Status changes must
+ * be reported through {@link #statusChanged(Transaction)}; the index is not
+ * safe for concurrent use while that happens.
+ */
+public final class TransactionIndex {
+
+    // date range scans are preferred over bitmap scans below this fraction of all rows
+    private static final int DATE_SCAN_DIVISOR = 16;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Transaction[] rows;
+    private final int[] executionDays;
+    private final int[] rowsByDate;
+    private final int[] sortedDays;
+    private final long[][] statusBitmaps;
+    private final long[][] currencyBitmaps;
+    private final Map<String, int[]> rowsByConsultant;
+    private final Map<String, int[]> rowsByCustomer;
+    private final Map<String, Integer> rowById;
+
+    private TransactionIndex(List<Transaction> transactions) {
+        int n = transactions.size();
+        int words = (n + 63) >>> 6;
+        this.rows = transactions.toArray(new Transaction[0]);
+        this.executionDays = new int[n];
+        this.statusBitmaps = new long[TransactionStatus.values().length][words];
+        this.currencyBitmaps = new long[Currency.values().length][words];
+        this.rowById = new HashMap<>(n * 2);
+
+        Map<String, Postings> consultants = new HashMap<>();
+        Map<String, Postings> customers = new HashMap<>();
+        long[] dayAndRow = new long[n];
+        for (int row = 0; row < n; row++) {
+            Transaction t = rows[row];
+            LocalDateTime executionDate = t.getExecutionDate();
+            int day = executionDate == null ? NO_DATE : (int) executionDate.toLocalDate().toEpochDay();
+            executionDays[row] = day;
+            dayAndRow[row] = ((long) day << 32) | row;
+            set(statusBitmaps[t.getStatus().ordinal()], row);
+            set(currencyBitmaps[t.getSourceAmount().getCurrency().getId()], row);
+            set(currencyBitmaps[t.getTargetAmount().getCurrency().getId()], row);
+            consultants.computeIfAbsent(t.getConsultantId(), k -> new Postings()).add(row);
+            customers.computeIfAbsent(t.getCustomerId(), k -> new Postings()).add(row);
+            rowById.put(t.getId(), row);
+        }
+
+        // sorting day and row packed into one long keeps the sort on primitives
+        Arrays.sort(dayAndRow);
+        this.rowsByDate = new int[n];
+        this.sortedDays = new int[n];
+        for (int i = 0; i < n; i++) {
+            rowsByDate[i] = (int) dayAndRow[i];
+            sortedDays[i] = (int) (dayAndRow[i] >> 32);
+        }
+        this.rowsByConsultant = toArrays(consultants);
+        this.rowsByCustomer = toArrays(customers);
+    }
+
+    public static TransactionIndex of(List<Transaction> transactions) {
+        return new TransactionIndex(transactions);
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public Result query(Criteria criteria) {
+        return new Result(criteria);
+    }
+
+    /**
+     * Moves a transaction to the bitmap of its current status, e.g. after it was reverted
+     */
+    public void statusChanged(Transaction transaction) {
+        Integer row = rowById.get(transaction.getId());
+        if (row == null) {
+            throw new IllegalArgumentException("Transaction " + transaction.getId() + " is not indexed");
+        }
+        for (long[] bitmap : statusBitmaps) {
+            bitmap[row >>> 6] &= ~(1L << row);
+        }
+        set(statusBitmaps[transaction.getStatus().ordinal()], row);
+    }
+
+    /**
+     * Filter criteria; unset criteria do not restrict the result.
+     * The date range applies to the execution date and includes both ends.
+     */
+    public static final class Criteria {
+        private TransactionStatus status;
+        private Currency currency;
+        private String consultantId;
+        private String customerId;
+        private LocalDate from;
+        private LocalDate to;
+
+        public Criteria status(TransactionStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        /**
+         * Matches transactions with the currency on either side
+         */
+        public Criteria currency(Currency currency) {
+            this.currency = currency;
+            return this;
+        }
+
+        public Criteria consultant(String consultantId) {
+            this.consultantId = consultantId;
+            return this;
+        }
+
+        public Criteria customer(String customerId) {
+            this.customerId = customerId;
+            return this;
+        }
+
+        public Criteria executedBetween(LocalDate from, LocalDate to) {
+            if (from != null && to != null && from.isAfter(to)) {
+                throw new IllegalArgumentException("Start date must not be after end date");
+            }
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        private boolean hasDateRange() {
+            return from != null || to != null;
+        }
+    }
+
+    /**
+     * Lazily evaluated query result; every terminal method runs the query again
+     */
+    public final class Result {
+
+        private final long[] statusBitmap;
+        private final long[] currencyBitmap;
+        private final int[] postings;
+        private final boolean empty;
+        private final boolean hasDateRange;
+        private final int fromDay;
+        private final int toDay;
+        private final String consultantId;
+        private final String customerId;
+
+        private Result(Criteria criteria) {
+            int[] consultantRows = criteria.consultantId == null ? null
+                    : rowsByConsultant.getOrDefault(criteria.consultantId, NO_ROWS);
+            int[] customerRows = criteria.customerId == null ? null
+                    : rowsByCustomer.getOrDefault(criteria.customerId, NO_ROWS);
+            this.postings = consultantRows == null ? customerRows
+                    : customerRows == null || consultantRows.length <= customerRows.length ? consultantRows : customerRows;
+            this.statusBitmap = criteria.status == null ? null : statusBitmaps[criteria.status.ordinal()];
+            // a currency registered after the index was built cannot occur in it
+            boolean unknownCurrency = criteria.currency != null && criteria.currency.getId() >= currencyBitmaps.length;
+            this.currencyBitmap = criteria.currency == null || unknownCurrency ? null : currencyBitmaps[criteria.currency.getId()];
+            this.fromDay = criteria.from == null ? NO_DATE + 1 : (int) criteria.from.toEpochDay();
+            this.toDay = criteria.to == null ? Integer.MAX_VALUE : (int) criteria.to.toEpochDay();
+            this.consultantId = criteria.consultantId;
+            this.customerId = criteria.customerId;
+            this.empty = unknownCurrency || (postings != null && postings.length == 0);
+            this.hasDateRange = criteria.hasDateRange();
+        }
+
+        public int count() {
+            if (empty) {
+                return 0;
+            }
+            if (postings == null && !hasDateRange) {
+                return countBitmaps();
+            }
+            if (postings == null && statusBitmap == null && currencyBitmap == null) {
+                return upperBound(toDay) - lowerBound(fromDay);
+            }
+            int[] count = new int[1];
+            scan(row -> {
+                count[0]++;
+                return true;
+            }, false);
+            return count[0];
+        }
+
+        public boolean isEmpty() {
+            boolean[] found = new boolean[1];
+            scan(row -> {
+                found[0] = true;
+                return false;
+            }, false);
+            return !found[0];
+        }
+
+        public void forEach(Consumer<Transaction> action) {
+            scan(row -> {
+                action.accept(rows[row]);
+                return true;
+            }, true);
+        }
+
+        public List<Transaction> toList() {
+            List<Transaction> result = new ArrayList<>();
+            forEach(result::add);
+            return result;
+        }
+
+        /**
+         * The first matches in list order, stopping the scan once enough are found
+         */
+        public List<Transaction> first(int limit) {
+            List<Transaction> result = new ArrayList<>(Math.min(limit, 1024));
+            if (limit > 0) {
+                scan(row -> {
+                    result.add(rows[row]);
+                    return result.size() < limit;
+                }, true);
+            }
+            return result;
+        }
+
+        private void scan(RowVisitor visitor, boolean inListOrder) {
+            if (empty) {
+                return;
+            }
+            int dateStart = hasDateRange ? lowerBound(fromDay) : 0;
+            int dateEnd = hasDateRange ? upperBound(toDay) : rows.length;
+            int dateRows = dateEnd - dateStart;
+            if (postings != null && (!hasDateRange || postings.length <= dateRows)) {
+                for (int row : postings) {
+                    if (matches(row) && !visitor.visit(row)) {
+                        return;
+                    }
+                }
+            } else if (hasDateRange && dateRows < rows.length / DATE_SCAN_DIVISOR) {
+                scanDates(visitor, dateStart, dateEnd, inListOrder);
+            } else {
+                scanBitmaps(visitor);
+            }
+        }
+
+        // candidates come in date order; restoring list order marks them in a bitmap first
+        private void scanDates(RowVisitor visitor, int start, int end, boolean inListOrder) {
+            long[] marked = inListOrder ? new long[(rows.length + 63) >>> 6] : null;
+            for (int i = start; i < end; i++) {
+                int row = rowsByDate[i];
+                if (matchesBitmaps(row) && matchesKeys(row)) {
+                    if (marked != null) {
+                        set(marked, row);
+                    } else if (!visitor.visit(row)) {
+                        return;
+                    }
+                }
+            }
+            if (marked != null) {
+                for (int w = 0; w < marked.length; w++) {
+                    for (long word = marked[w]; word != 0; word &= word - 1) {
+                        if (!visitor.visit((w << 6) + Long.numberOfTrailingZeros(word))) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void scanBitmaps(RowVisitor visitor) {
+            int words = (rows.length + 63) >>> 6;
+            for (int w = 0; w < words; w++) {
+                long word = word(w);
+                for (; word != 0; word &= word - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (matchesDate(row) && matchesKeys(row) && !visitor.visit(row)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private int countBitmaps() {
+            int count = 0;
+            int words = (rows.length + 63) >>> 6;
+            for (int w = 0; w < words; w++) {
+                count += Long.bitCount(word(w));
+            }
+            return count;
+        }
+
+        // rows of one bitmap word matching status and currency, limited to existing rows
+        private long word(int w) {
+            long word = -1L;
+            if (statusBitmap != null) {
+                word &= statusBitmap[w];
+            }
+            if (currencyBitmap != null) {
+                word &= currencyBitmap[w];
+            }
+            int remaining = rows.length - (w << 6);
+            return remaining >= 64 ? word : word & ((1L << remaining) - 1);
+        }
+
+        private boolean matches(int row) {
+            return matchesBitmaps(row) && matchesDate(row) && matchesKeys(row);
+        }
+
+        private boolean matchesBitmaps(int row) {
+            return (statusBitmap == null || isSet(statusBitmap, row))
+                    && (currencyBitmap == null || isSet(currencyBitmap, row));
+        }
+
+        // without a date range every row matches, also one without an execution date, as count() has it
+        private boolean matchesDate(int row) {
+            if (!hasDateRange) {
+                return true;
+            }
+            int day = executionDays[row];
+            return day >= fromDay && day <= toDay;
+        }
+
+        private boolean matchesKeys(int row) {
+            Transaction t = rows[row];
+            return (consultantId == null || consultantId.equals(t.getConsultantId()))
+                    && (customerId == null || customerId.equals(t.getCustomerId()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        /**
+         * Returns false to stop the scan
+         */
+        boolean visit(int row);
+    }
+
+    private static final class Postings {
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    // first position in date order with a day not before the given day
+    private int lowerBound(int day) {
+        int low = 0;
+        int high = sortedDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedDays[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // first position in date order with a day after the given day
+    private int upperBound(int day) {
+        int low = 0;
+        int high = sortedDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedDays[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, Postings> postings) {
+        Map<String, int[]> result = new HashMap<>(postings.size() * 2);
+        postings.forEach((key, value) -> result.put(key, Arrays.copyOf(value.rows, value.size)));
+        return result;
+    }
+
+    private static void set(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    private static boolean isSet(long[] bitmap, int row) {
+        return (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+}
@@ -64,11 +64,11 @@ public class TransactionService {
      */
     public List<Transaction> filterByDateRange(List<Transaction> transactions, 
                                                LocalDate startDate, LocalDate endDate) {
+        // compare against the range bounds instead of converting every execution date
+        LocalDateTime start = startDate.atStartOfDay();
+        LocalDateTime end = endDate.plusDays(1).atStartOfDay();
         return transactions.stream()
-            .filter(t -> {
-                LocalDate execDate = t.getExecutionDate().toLocalDate();
-                return !execDate.isBefore(startDate) && !execDate.isAfter(endDate);
-            })
+            .filter(t -> !t.getExecutionDate().isBefore(start) && t.getExecutionDate().isBefore(end))
             .collect(Collectors.toList());
     }
     
@@ -81,6 +81,13 @@ public class TransactionService {
             .collect(Collectors.toList());
     }
     
+    /**
+     * Build an index for answering several combined filter queries over the same transactions
+     */
+    public TransactionIndex index(List<Transaction> transactions) {
+        return TransactionIndex.of(transactions);
+    }
+    
     /**
      * Check if a user can revert a transaction (only admins)
      */
@@ -0,0 +1,86 @@
+package ch.pingu.domain.util;
+
+import ch.pingu.domain.model.CrossRateMatrix;
+import ch.pingu.domain.model.Currency;
+import ch.pingu.domain.model.ExchangeRateVersion;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the per-call cost of computing a cross rate from the version's
+ * rate map against reading it from the precomputed cross-rate matrix, and
+ * checks that both paths return identical rates for every currency pair.
+ *
+ * usage cli:
+ * cd domain
+ * mvn compile
+ * java -cp target/classes ch.pingu.domain.util.CrossRateBenchmark [iterations]
+ */
+public class CrossRateBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        Map<Currency, Double> rates = new HashMap<>();
+        rates.put(Currency.CHF, 1.0);
+        rates.put(Currency.EUR, 1.05);
+        rates.put(Currency.USD, 1.15);
+        rates.put(Currency.GBP, 0.85);
+        rates.put(Currency.JPY, 165.5);
+        rates.put(Currency.CAD, 1.55);
+        rates.put(Currency.AUD, 1.70);
+        rates.put(Currency.CNY, 8.30);
+        rates.put(Currency.INR, 96.0);
+        rates.put(Currency.SEK, 11.80);
+        ExchangeRateVersion version = ExchangeRateVersion.create("Benchmark", Currency.CHF, rates, "benchmark");
+
+        Currency[] currencies = Currency.values();
+        CrossRateMatrix matrix = version.getCrossRates();
+
+        for (Currency source : currencies) {
+            for (Currency target : currencies) {
+                BigDecimal expected = CrossRateMatrix.compute(source, target, version.getBaseCurrency(), version.getRates());
+                BigDecimal actual = matrix.rate(source, target);
+                if (!expected.equals(actual) || expected.doubleValue() != matrix.rateAsDouble(source, target)) {
+                    throw new IllegalStateException("Mismatch for " + source + "/" + target
+                        + ": expected " + expected + ", got " + actual);
+                }
+            }
+        }
+        System.out.println("Verified " + currencies.length * currencies.length + " currency pairs");
+
+        Map<Currency, Double> versionRates = version.getRates();
+        Currency base = version.getBaseCurrency();
+        int n = currencies.length;
+
+        // warm-up
+        run(iterations / 10, n * n, p -> CrossRateMatrix.compute(currencies[p / n], currencies[p % n], base, versionRates));
+        run(iterations / 10, n * n, p -> matrix.rate(currencies[p / n], currencies[p % n]));
+
+        long computed = run(iterations, n * n, p -> CrossRateMatrix.compute(currencies[p / n], currencies[p % n], base, versionRates));
+        long precomputed = run(iterations, n * n, p -> matrix.rate(currencies[p / n], currencies[p % n]));
+
+        System.out.printf("Computed per call:   %8.1f ns/op%n", (double) computed / iterations);
+        System.out.printf("Precomputed matrix:  %8.1f ns/op%n", (double) precomputed / iterations);
+    }
+
+    private static long run(int iterations, int pairs, RateLookup lookup) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += lookup.rate(i % pairs).scale();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+
+    @FunctionalInterface
+    private interface RateLookup {
+        BigDecimal rate(int pair);
+    }
+}
@@ -0,0 +1,110 @@
+package ch.pingu.domain.util;
+
+import ch.pingu.domain.model.CrossRateMatrix;
+import ch.pingu.domain.model.Currency;
+import ch.pingu.domain.model.ExchangeRateVersion;
+import ch.pingu.domain.model.FixedPointMoney;
+import ch.pingu.domain.model.Money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Verifies fixed-point conversions against the BigDecimal results and compares
+ * the per-call cost of Money.convert with FixedPointMoney.convertMinor.
+ *
+ * usage cli:
+ * cd domain
+ * mvn compile
+ * java -cp target/classes ch.pingu.domain.util.FixedPointMoneyBenchmark [samples]
+ */
+public class FixedPointMoneyBenchmark {
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Map<Currency, Double> rates = new HashMap<>();
+        rates.put(Currency.CHF, 1.0);
+        rates.put(Currency.EUR, 1.05);
+        rates.put(Currency.USD, 1.15);
+        rates.put(Currency.GBP, 0.85);
+        rates.put(Currency.JPY, 165.5);
+        rates.put(Currency.CAD, 1.55);
+        rates.put(Currency.AUD, 1.70);
+        rates.put(Currency.CNY, 8.30);
+        rates.put(Currency.INR, 96.0);
+        rates.put(Currency.SEK, 11.80);
+        ExchangeRateVersion version = ExchangeRateVersion.create("Benchmark", Currency.CHF, rates, "benchmark");
+        CrossRateMatrix matrix = version.getCrossRates();
+        Currency[] currencies = Currency.values();
+
+        Random random = new Random(42);
+        long[] amounts = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            // mostly everyday amounts, some large enough to take the overflow path
+            amounts[i] = i % 1000 == 0 ? Long.MAX_VALUE / 1000 - random.nextInt(1000) : random.nextLong(100_000_000L);
+        }
+
+        long verified = 0;
+        for (int i = 0; i < samples; i++) {
+            Currency source = currencies[i % currencies.length];
+            Currency target = currencies[(i / currencies.length) % currencies.length];
+            BigDecimal amount = BigDecimal.valueOf(amounts[i], source.getMinorUnits());
+            BigDecimal rate = matrix.rate(source, target);
+
+            BigDecimal expected = source == target ? amount : amount.multiply(rate).setScale(target.getMinorUnits(), RoundingMode.HALF_UP);
+            FixedPointMoney actual = FixedPointMoney.ofMinor(amounts[i], source).convert(target, matrix.rateInMicros(source, target));
+            if (expected.compareTo(actual.getAmount()) != 0) {
+                throw new IllegalStateException("Mismatch converting " + amount + " " + source + " to " + target
+                    + ": expected " + expected + ", got " + actual.getAmount());
+            }
+
+            // Money always keeps two decimals, so it is only comparable for two-decimal currencies
+            if (source.getMinorUnits() == 2 && target.getMinorUnits() == 2 && source != target) {
+                Money money = new Money(amount, source).convert(target, rate);
+                if (money.getAmount().compareTo(actual.getAmount()) != 0) {
+                    throw new IllegalStateException("Mismatch with Money.convert for " + amount + " " + source + " to " + target
+                        + ": expected " + money.getAmount() + ", got " + actual.getAmount());
+                }
+            }
+            verified++;
+        }
+        System.out.println("Verified " + verified + " conversions against BigDecimal");
+
+        int n = currencies.length;
+        Money[] moneys = new Money[samples];
+        for (int i = 0; i < samples; i++) {
+            moneys[i] = new Money(BigDecimal.valueOf(amounts[i] % 100_000_000L, 2), currencies[i % n]);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < samples; i++) {
+                Currency target = currencies[(i + 1) % n];
+                sink += moneys[i].convert(target, matrix.rate(moneys[i].getCurrency(), target)).getAmount().scale();
+            }
+            long bigDecimalNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < samples; i++) {
+                Currency source = currencies[i % n];
+                Currency target = currencies[(i + 1) % n];
+                sink += FixedPointMoney.convertMinor(amounts[i] % 100_000_000L, source.getMinorUnits(),
+                    target.getMinorUnits(), matrix.rateInMicros(source, target));
+            }
+            long fixedPointNanos = System.nanoTime() - start;
+
+            if (round == 2) {
+                System.out.printf("Money.convert (BigDecimal):   %8.1f ns/op%n", (double) bigDecimalNanos / samples);
+                System.out.printf("FixedPointMoney.convertMinor: %8.1f ns/op%n", (double) fixedPointNanos / samples);
+            }
+            if (sink == 42) {
+                System.out.println();
+            }
+        }
+    }
+}
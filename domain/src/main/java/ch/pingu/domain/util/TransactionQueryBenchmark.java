@@ -0,0 +1,150 @@
+package ch.pingu.domain.util;
+
+import ch.pingu.domain.model.Currency;
+import ch.pingu.domain.model.Money;
+import ch.pingu.domain.model.Transaction;
+import ch.pingu.domain.model.TransactionStatus;
+import ch.pingu.domain.service.TransactionIndex;
+import ch.pingu.domain.service.TransactionService;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Compares combined filter queries answered by chaining the stream filters of
+ * TransactionService against the same queries on a TransactionIndex, for
+ * growing numbers of transactions. Both paths must return the same
+ * transactions in the same order; the index build time is reported separately.
+ *
+ * usage cli:
+ * cd domain
+ * mvn compile
+ * java -Xmx3g -cp target/classes ch.pingu.domain.util.TransactionQueryBenchmark [sizes, e.g. 10000,100000,1000000] [runs]
+ */
+public class TransactionQueryBenchmark {
+
+    private static final Currency[] CURRENCIES = {
+        Currency.CHF, Currency.EUR, Currency.USD, Currency.GBP, Currency.JPY,
+        Currency.CAD, Currency.AUD, Currency.CNY, Currency.INR, Currency.SEK
+    };
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final int CONSULTANTS = 50;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int DAYS = 730;
+
+    private record BenchQuery(String name,
+                              Function<List<Transaction>, List<Transaction>> streams,
+                              Function<TransactionIndex, List<Transaction>> indexed) {}
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+            ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] {10_000, 100_000, 1_000_000};
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+
+        TransactionService service = new TransactionService();
+        LocalDate monthStart = START.toLocalDate().plusDays(300);
+        LocalDate monthEnd = monthStart.plusDays(29);
+        LocalDate weekEnd = monthStart.plusDays(6);
+
+        List<BenchQuery> queries = List.of(
+            new BenchQuery("status + currency",
+                list -> service.filterByCurrency(service.filterByStatus(list, TransactionStatus.REVERTED), Currency.SEK),
+                index -> index.query(new TransactionIndex.Criteria()
+                    .status(TransactionStatus.REVERTED).currency(Currency.SEK)).toList()),
+            new BenchQuery("consultant + month",
+                list -> service.filterByDateRange(service.filterByConsultant(list, "user-007"), monthStart, monthEnd),
+                index -> index.query(new TransactionIndex.Criteria()
+                    .consultant("user-007").executedBetween(monthStart, monthEnd)).toList()),
+            new BenchQuery("customer",
+                list -> service.filterByCustomer(list, "customer-00042"),
+                index -> index.query(new TransactionIndex.Criteria().customer("customer-00042")).toList()),
+            new BenchQuery("week + status + currency",
+                list -> service.filterByCurrency(service.filterByStatus(
+                    service.filterByDateRange(list, monthStart, weekEnd), TransactionStatus.COMPLETED), Currency.EUR),
+                index -> index.query(new TransactionIndex.Criteria().executedBetween(monthStart, weekEnd)
+                    .status(TransactionStatus.COMPLETED).currency(Currency.EUR)).toList()),
+            new BenchQuery("status + currency, count",
+                list -> service.filterByCurrency(service.filterByStatus(list, TransactionStatus.EXECUTED), Currency.USD),
+                index -> {
+                    int count = index.query(new TransactionIndex.Criteria()
+                        .status(TransactionStatus.EXECUTED).currency(Currency.USD)).count();
+                    return Collections.nCopies(count, (Transaction) null);
+                })
+        );
+
+        for (int size : sizes) {
+            List<Transaction> transactions = generate(size);
+
+            long buildStart = System.nanoTime();
+            TransactionIndex index = TransactionIndex.of(transactions);
+            double buildMs = (System.nanoTime() - buildStart) / 1e6;
+            System.out.printf("%n%,d transactions, index built in %.1f ms%n", size, buildMs);
+            System.out.printf("%-28s %8s %14s %14s %9s%n", "query (median of " + runs + ")", "matches", "streams (ms)", "index (ms)", "speedup");
+
+            for (BenchQuery query : queries) {
+                List<Transaction> expected = query.streams().apply(transactions);
+                List<Transaction> actual = query.indexed().apply(index);
+                boolean countOnly = query.name().endsWith("count");
+                if (countOnly ? expected.size() != actual.size() : !expected.equals(actual)) {
+                    throw new IllegalStateException("Mismatch for " + query.name()
+                        + ": expected " + expected.size() + " transactions, got " + actual.size());
+                }
+                double streams = median(runs, () -> query.streams().apply(transactions));
+                double indexed = median(runs, () -> query.indexed().apply(index));
+                System.out.printf("%-28s %8d %14.3f %14.3f %8.1fx%n", query.name(), expected.size(), streams, indexed, streams / indexed);
+            }
+        }
+    }
+
+    private static List<Transaction> generate(int size) {
+        Random random = new Random(42);
+        List<Transaction> transactions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Currency source = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            Currency target = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            LocalDateTime executionDate = START.plusDays(random.nextInt(DAYS)).plusMinutes(random.nextInt(24 * 60));
+            String consultant = String.format("user-%03d", random.nextInt(CONSULTANTS));
+            transactions.add(new Transaction(
+                String.format("txn-%08d", i),
+                consultant,
+                String.format("customer-%05d", random.nextInt(Math.max(1, size / 100))),
+                new Money(100 + random.nextInt(100_000), source),
+                new Money(100 + random.nextInt(100_000), target),
+                0.5 + random.nextDouble(),
+                "benchmark",
+                executionDate,
+                executionDate.minusMinutes(5),
+                consultant,
+                STATUSES[random.nextInt(STATUSES.length)]
+            ));
+        }
+        return transactions;
+    }
+
+    private static double median(int runs, Supplier<List<Transaction>> query) {
+        long sink = 0;
+        // warm-up
+        for (int i = 0; i < 3; i++) {
+            sink += query.get().size();
+        }
+        double[] samples = new double[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            sink += query.get().size();
+            samples[r] = (System.nanoTime() - start) / 1e6;
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        Arrays.sort(samples);
+        return samples[runs / 2];
+    }
+}
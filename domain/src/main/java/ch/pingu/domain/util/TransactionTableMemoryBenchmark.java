@@ -0,0 +1,183 @@
+package ch.pingu.domain.util;
+
+import ch.pingu.domain.model.Currency;
+import ch.pingu.domain.model.Money;
+import ch.pingu.domain.model.Transaction;
+import ch.pingu.domain.model.TransactionStatus;
+import ch.pingu.domain.model.TransactionTable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Compares the heap retained by a client-side transaction list held as objects,
+ * the way the transaction list view held it before (a Transaction per row
+ * wrapped in a row object with its own date formatter), with the same list in a
+ * TransactionTable with one row view per row. The transactions look like parsed
+ * server responses: every row has its own strings, ids are random UUIDs, and
+ * consultants, customers and rate versions repeat. The table is filled a page at
+ * a time, as TransactionRepository.queryTable does. Every row read back from the
+ * table is checked against the transaction it was built from, and the time of a
+ * full scan summing the source amounts is reported for both layouts.
+ *
+ * usage cli:
+ * cd domain
+ * mvn compile
+ * java -Xmx4g -cp target/classes ch.pingu.domain.util.TransactionTableMemoryBenchmark [sizes, e.g. 10000,100000,1000000]
+ */
+public class TransactionTableMemoryBenchmark {
+
+    private static final Currency[] CURRENCIES = {
+        Currency.CHF, Currency.EUR, Currency.USD, Currency.GBP, Currency.JPY,
+        Currency.CAD, Currency.AUD, Currency.CNY, Currency.INR, Currency.SEK
+    };
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final String[] REASONS = {"Customer request", "Wrong amount", "Duplicate booking"};
+    private static final int CONSULTANTS = 50;
+    private static final int CUSTOMERS = 10_000;
+    private static final int RATE_VERSIONS = 30;
+    private static final int PAGE_SIZE = 1000;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    // what the list view kept per row before: the transaction behind a wrapper with its own formatter
+    private record ObjectRow(Transaction transaction, DateTimeFormatter formatter) {}
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = args.length > 0
+            ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] {10_000, 100_000, 1_000_000};
+        String[] customers = new String[CUSTOMERS];
+        Random names = new Random(7);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new UUID(names.nextLong(), names.nextLong()).toString();
+        }
+
+        System.out.printf("%10s %14s %14s %10s %10s %10s %10s %8s%n", "rows", "objects (MB)", "table (MB)",
+            "B/row obj", "B/row tbl", "scan obj", "scan tbl", "ratio");
+        for (int n : sizes) {
+            long base = usedHeap();
+            List<ObjectRow> objects = new ArrayList<>(n);
+            for (int row = 0; row < n; row++) {
+                objects.add(new ObjectRow(transaction(row, customers), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+            }
+            long objectBytes = usedHeap() - base;
+            long objectScan = scanObjects(objects);
+            objects = null;
+
+            base = usedHeap();
+            TransactionTable table = new TransactionTable();
+            for (int start = 0; start < n; start += PAGE_SIZE) {
+                List<Transaction> page = new ArrayList<>(PAGE_SIZE);
+                for (int row = start; row < Math.min(n, start + PAGE_SIZE); row++) {
+                    page.add(transaction(row, customers));
+                }
+                page.forEach(table::add);
+            }
+            List<TransactionTable.Row> views = new ArrayList<>(n);
+            for (int row = 0; row < n; row++) {
+                views.add(table.row(row));
+            }
+            long tableBytes = usedHeap() - base;
+            long tableScan = scanTable(table);
+
+            verify(table, customers);
+            System.out.printf("%,10d %,14.1f %,14.1f %,10d %,10d %8.1fms %8.1fms %7.1fx%n", n,
+                objectBytes / 1e6, tableBytes / 1e6, objectBytes / n, tableBytes / n,
+                objectScan / 1e6, tableScan / 1e6, (double) objectBytes / tableBytes);
+            views.clear();
+        }
+    }
+
+    // the same transaction for the same row number each time it is built, with strings of its own
+    private static Transaction transaction(int row, String[] customers) {
+        Random random = new Random(row);
+        Currency source = CURRENCIES[random.nextInt(CURRENCIES.length)];
+        Currency target = CURRENCIES[random.nextInt(CURRENCIES.length)];
+        String consultant = new String("user-" + String.format("%03d", random.nextInt(CONSULTANTS)));
+        Transaction t = new Transaction(
+            new UUID(random.nextLong(), random.nextLong()).toString(),
+            consultant,
+            new String(customers[random.nextInt(CUSTOMERS)]),
+            new Money(new BigDecimal((1 + random.nextInt(100_000)) + "." + String.format("%02d", random.nextInt(100))), source),
+            new Money(new BigDecimal((1 + random.nextInt(100_000)) + "." + String.format("%02d", random.nextInt(100))), target),
+            0.5 + random.nextDouble(),
+            new String("seed-version-" + (20260101 + random.nextInt(RATE_VERSIONS))),
+            START.plusSeconds(random.nextInt(730 * 86_400)).withNano(random.nextInt(1_000_000) * 1_000),
+            START.plusSeconds(random.nextInt(730 * 86_400)).withNano(random.nextInt(1_000_000) * 1_000),
+            new String(consultant),
+            STATUSES[random.nextInt(STATUSES.length - 1)]
+        );
+        if (random.nextInt(10) == 0) {
+            t.revert(new String(REASONS[random.nextInt(REASONS.length)]), new String("admin"));
+        }
+        return t;
+    }
+
+    private static long scanObjects(List<ObjectRow> rows) {
+        long start = System.nanoTime();
+        BigDecimal[] totals = new BigDecimal[Currency.count()];
+        Arrays.fill(totals, BigDecimal.ZERO);
+        for (ObjectRow row : rows) {
+            Money amount = row.transaction().getSourceAmount();
+            totals[amount.getCurrency().getId()] = totals[amount.getCurrency().getId()].add(amount.getAmount());
+        }
+        blackhole(totals);
+        return System.nanoTime() - start;
+    }
+
+    private static long scanTable(TransactionTable table) {
+        long start = System.nanoTime();
+        long[] totals = new long[Currency.count()];
+        table.forEach(row -> totals[row.getSourceCurrency().getId()] += row.getSourceCents());
+        blackhole(totals);
+        return System.nanoTime() - start;
+    }
+
+    private static void verify(TransactionTable table, String[] customers) {
+        table.forEach(row -> {
+            Transaction expected = transaction(row.index(), customers);
+            Transaction actual = row.toTransaction();
+            boolean same = expected.getId().equals(actual.getId())
+                && expected.getConsultantId().equals(actual.getConsultantId())
+                && expected.getCustomerId().equals(actual.getCustomerId())
+                && expected.getSourceAmount().equals(actual.getSourceAmount())
+                && expected.getTargetAmount().equals(actual.getTargetAmount())
+                && expected.getExchangeRate() == actual.getExchangeRate()
+                && expected.getExchangeRateVersionId().equals(actual.getExchangeRateVersionId())
+                && expected.getExecutionDate().equals(actual.getExecutionDate())
+                && expected.getCreatedAt().equals(actual.getCreatedAt())
+                && expected.getCreatedBy().equals(actual.getCreatedBy())
+                && expected.getStatus() == actual.getStatus()
+                && Objects.equals(expected.getRevertReason(), actual.getRevertReason())
+                && Objects.equals(expected.getRevertedBy(), actual.getRevertedBy())
+                && (actual.getRevertedAt() == null) == (expected.getRevertedAt() == null);
+            if (!same) {
+                throw new IllegalStateException("Row " + row.index() + " differs from its transaction");
+            }
+        });
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static volatile Object sink;
+
+    private static void blackhole(Object value) {
+        sink = value;
+    }
+}
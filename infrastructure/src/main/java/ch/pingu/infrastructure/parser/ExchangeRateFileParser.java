@@ -0,0 +1,216 @@
+package ch.pingu.infrastructure.parser;
+
+import ch.pingu.domain.model.Currency;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Streaming parser and validator for exchange rate upload files.
+ *
+ * Reads the file token by token with Jackson's streaming API instead of
+ * building a tree, collects every invalid entry with its line and column,
+ * and reports progress as the fraction of bytes consumed. Validation is
+ * all-or-nothing: only a result without errors is meant to be uploaded.
+ * Currency codes are checked for their shape but stay strings; they are
+ * registered as currencies once the server has accepted the version.
+ *
+ * Expected format:
+ * { "versionName": "...", "baseCurrency": "CHF", "rates": { "CHF": 1.0, "EUR": 1.05 } }
+ */
+public class ExchangeRateFileParser {
+
+    private static final double BASE_RATE_TOLERANCE = 0.0001;
+    private static final int PROGRESS_INTERVAL = 64;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public record ValidationError(int line, int column, String message) {
+        @Override
+        public String toString() {
+            return line > 0 ? "Line " + line + ", column " + column + ": " + message : message;
+        }
+    }
+
+    public static class ParseResult {
+        private final String versionName;
+        private final String baseCurrency;
+        private final Map<String, Double> rates;
+        private final List<ValidationError> errors;
+
+        ParseResult(String versionName, String baseCurrency, Map<String, Double> rates, List<ValidationError> errors) {
+            this.versionName = versionName;
+            this.baseCurrency = baseCurrency;
+            this.rates = Collections.unmodifiableMap(rates);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+
+        public String getBaseCurrency() {
+            return baseCurrency;
+        }
+
+        public Map<String, Double> getRates() {
+            return rates;
+        }
+
+        public List<ValidationError> getErrors() {
+            return errors;
+        }
+    }
+
+    public ParseResult parse(Path file, DoubleConsumer progress) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return parse(in, Files.size(file), progress);
+        }
+    }
+
+    public ParseResult parse(InputStream in, long totalBytes, DoubleConsumer progress) throws IOException {
+        String versionName = null;
+        String baseCurrency = null;
+        Map<String, Double> rates = new LinkedHashMap<>();
+        Map<String, JsonLocation> rateLocations = new HashMap<>();
+        List<ValidationError> errors = new ArrayList<>();
+        boolean versionNameSeen = false;
+        boolean baseCurrencySeen = false;
+        boolean ratesSeen = false;
+        JsonLocation end = null;
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                errors.add(error(parser.currentLocation(), "File must contain a JSON object"));
+                return new ParseResult(null, null, rates, errors);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                JsonLocation location = parser.currentTokenLocation();
+                switch (field) {
+                    case "versionName" -> {
+                        versionNameSeen = true;
+                        if (value == JsonToken.VALUE_STRING && !parser.getText().isBlank()) {
+                            versionName = parser.getText();
+                        } else {
+                            errors.add(error(location, "'versionName' must be a non-empty string"));
+                            parser.skipChildren();
+                        }
+                    }
+                    case "baseCurrency" -> {
+                        baseCurrencySeen = true;
+                        if (value == JsonToken.VALUE_STRING && Currency.isValidCode(parser.getText())) {
+                            baseCurrency = parser.getText().toUpperCase(Locale.ROOT);
+                        } else {
+                            errors.add(error(location, "'baseCurrency' must be a three-letter currency code"));
+                            parser.skipChildren();
+                        }
+                    }
+                    case "rates" -> {
+                        ratesSeen = true;
+                        if (value != JsonToken.START_OBJECT) {
+                            errors.add(error(location, "'rates' must be an object of currency codes to rates"));
+                            parser.skipChildren();
+                        } else {
+                            parseRates(parser, rates, rateLocations, errors, totalBytes, progress);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            end = parser.currentLocation();
+        } catch (JsonProcessingException e) {
+            errors.add(error(e.getLocation(), "Malformed JSON: " + e.getOriginalMessage()));
+            progress.accept(1.0);
+            return new ParseResult(versionName, baseCurrency, rates, errors);
+        }
+
+        if (!versionNameSeen) {
+            errors.add(error(end, "Missing 'versionName' field"));
+        }
+        if (!baseCurrencySeen) {
+            errors.add(error(end, "Missing 'baseCurrency' field"));
+        }
+        if (!ratesSeen) {
+            errors.add(error(end, "Missing 'rates' field"));
+        } else if (rateLocations.isEmpty()) {
+            errors.add(error(end, "'rates' must contain at least one currency"));
+        }
+        if (baseCurrency != null && ratesSeen) {
+            Double baseRate = rates.get(baseCurrency);
+            if (baseRate == null) {
+                if (!rateLocations.containsKey(baseCurrency)) {
+                    errors.add(error(end, "Base currency " + baseCurrency + " must have a rate of 1.0"));
+                }
+            } else if (Math.abs(baseRate - 1.0) > BASE_RATE_TOLERANCE) {
+                errors.add(error(rateLocations.get(baseCurrency), "Base currency rate must be 1.0"));
+            }
+        }
+
+        progress.accept(1.0);
+        return new ParseResult(versionName, baseCurrency, rates, errors);
+    }
+
+    private void parseRates(JsonParser parser, Map<String, Double> rates, Map<String, JsonLocation> rateLocations,
+                            List<ValidationError> errors, long totalBytes, DoubleConsumer progress) throws IOException {
+        int entries = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String code = parser.currentName();
+            JsonToken value = parser.nextToken();
+            JsonLocation location = parser.currentTokenLocation();
+            String key = code.toUpperCase(Locale.ROOT);
+
+            if (!Currency.isValidCode(code)) {
+                errors.add(error(location, "Invalid currency code '" + code + "'"));
+                parser.skipChildren();
+            } else if (rateLocations.containsKey(key)) {
+                errors.add(error(location, "Duplicate rate for " + key));
+                parser.skipChildren();
+            } else if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT) {
+                errors.add(error(location, "Rate for " + key + " must be a number"));
+                rateLocations.put(key, location);
+                parser.skipChildren();
+            } else {
+                double rate = parser.getDoubleValue();
+                rateLocations.put(key, location);
+                if (!(rate > 0) || Double.isInfinite(rate)) {
+                    errors.add(error(location, "Rate for " + key + " must be positive"));
+                } else {
+                    rates.put(key, rate);
+                }
+            }
+
+            if (++entries % PROGRESS_INTERVAL == 0 && totalBytes > 0) {
+                progress.accept(Math.min(1.0, (double) parser.currentLocation().getByteOffset() / totalBytes));
+            }
+        }
+    }
+
+    private static ValidationError error(JsonLocation location, String message) {
+        if (location == null) {
+            return new ValidationError(0, 0, message);
+        }
+        return new ValidationError(location.getLineNr(), location.getColumnNr(), message);
+    }
+}
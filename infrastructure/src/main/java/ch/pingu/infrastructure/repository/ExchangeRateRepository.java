@@ -2,6 +2,8 @@ package ch.pingu.infrastructure.repository;
 
 import ch.pingu.domain.model.Currency;
 import ch.pingu.domain.model.ExchangeRateVersion;
+import ch.pingu.domain.model.TimeOrderedId;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -13,15 +15,32 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class ExchangeRateRepository {
 
+    public record ConversionRequest(Currency from, Currency to, BigDecimal amount) {}
+
+    public record AsOfConversion(String versionId, BigDecimal result) {}
+
+    public record VersionSummary(String id, String versionName, Currency baseCurrency,
+                                 LocalDateTime uploadedAt, String uploadedBy, boolean active, long rateCount) {}
+
+    private record CachedVersion(String etag, ExchangeRateVersion version) {}
+
+    // versions kept for revalidation in each cache, least recently used dropped first
+    private static final int CACHED_VERSIONS = 16;
+
     private final String baseUrl;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    // active and by-id lookups; point-in-time lookups have their own, so a browse through the
+    // history cannot push these out. Each is guarded by itself.
+    private final Map<String, CachedVersion> versionCache = lruCache();
+    private final Map<String, CachedVersion> asOfCache = lruCache();
 
     public ExchangeRateRepository(String baseUrl) {
         this.baseUrl = baseUrl;
@@ -33,13 +52,7 @@ public class ExchangeRateRepository {
 
     public Optional<ExchangeRateVersion> findById(String id, String token) {
         try {
-            HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/rates/" + id, token)
-                    .GET()
-                    .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 404) return Optional.empty();
-            if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
-            return Optional.of(mapToDomain(objectMapper.readValue(response.body(), ExchangeRateVersionDTO.class)));
+            return fetchVersion(versionCache, baseUrl + "/api/rates/" + id, token);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -49,17 +62,46 @@ public class ExchangeRateRepository {
 
     public Optional<ExchangeRateVersion> findActiveVersion(String token) {
         try {
-            HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/rates/active", token)
+            return fetchVersion(versionCache, baseUrl + "/api/rates/active", token);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching active rate version", e);
+        }
+    }
+
+    /**
+     * The version that was valid at the given time, resolved on the server without loading the history
+     */
+    public Optional<ExchangeRateVersion> findVersionAt(LocalDateTime at, String token) {
+        try {
+            return fetchVersion(asOfCache, baseUrl + "/api/rates/as-of?at=" + at, token);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching rate version valid at " + at, e);
+        }
+    }
+
+    /**
+     * Converts with the rates valid at the given time, e.g. to re-price a back-dated transaction.
+     * The result names the version that was used.
+     */
+    public AsOfConversion convertAt(LocalDateTime at, Currency from, Currency to, BigDecimal amount, String token) {
+        try {
+            String url = baseUrl + "/api/rates/as-of/convert?at=" + at
+                    + "&from=" + from.getCode() + "&to=" + to.getCode() + "&amount=" + amount.toPlainString();
+            HttpRequest request = HttpClientHelper.requestBuilder(url, token)
                     .GET()
                     .build();
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 404) return Optional.empty();
             if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
-            return Optional.of(mapToDomain(objectMapper.readValue(response.body(), ExchangeRateVersionDTO.class)));
+            AsOfConversionDTO dto = objectMapper.readValue(response.body(), AsOfConversionDTO.class);
+            return new AsOfConversion(dto.versionId, dto.result);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
-            throw new RuntimeException("Error fetching active rate version", e);
+            throw new RuntimeException("Error converting with rates valid at " + at, e);
         }
     }
 
@@ -79,9 +121,52 @@ public class ExchangeRateRepository {
         }
     }
 
+    /**
+     * Lists all versions without their rates, e.g. to display them; the server answers with one query
+     */
+    public List<VersionSummary> findAllSummaries(String token) {
+        try {
+            HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/rates/summaries", token)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+            List<VersionSummaryDTO> dtos = objectMapper.readValue(response.body(), new TypeReference<>() {});
+            return dtos.stream()
+                    .map(dto -> new VersionSummary(dto.id, dto.versionName, Currency.register(dto.baseCurrency),
+                            dto.uploadedAt, dto.uploadedBy, dto.active, dto.rateCount))
+                    .toList();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching rate version summaries", e);
+        }
+    }
+
     public ExchangeRateVersion save(ExchangeRateVersion version, String token) {
+        return post(mapToDTO(version), token);
+    }
+
+    /**
+     * Uploads a new version given by currency codes, e.g. from a parsed file. Codes not known
+     * yet become currencies only from the response, once the server has accepted the version.
+     */
+    public ExchangeRateVersion create(String versionName, String baseCurrency, Map<String, Double> rates,
+                                      String uploadedBy, String token) {
+        ExchangeRateVersionDTO dto = new ExchangeRateVersionDTO();
+        dto.id = TimeOrderedId.next();
+        dto.versionName = versionName;
+        dto.baseCurrency = baseCurrency;
+        dto.rates = new HashMap<>();
+        rates.forEach((code, rate) -> dto.rates.put(code, BigDecimal.valueOf(rate)));
+        dto.uploadedAt = LocalDateTime.now();
+        dto.uploadedBy = uploadedBy;
+        return post(dto, token);
+    }
+
+    private ExchangeRateVersion post(ExchangeRateVersionDTO dto, String token) {
         try {
-            String body = objectMapper.writeValueAsString(mapToDTO(version));
+            String body = objectMapper.writeValueAsString(dto);
             HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/rates", token)
                     .header("Content-Type", "application/json")
                     .POST(HttpRequest.BodyPublishers.ofString(body))
@@ -112,16 +197,86 @@ public class ExchangeRateRepository {
         }
     }
 
+    /**
+     * Converts all amounts against one version in a single round trip; results keep the request order
+     */
+    public List<BigDecimal> convertAll(String versionId, List<ConversionRequest> items, String token) {
+        try {
+            List<ConversionItemDTO> dtos = items.stream()
+                    .map(i -> new ConversionItemDTO(i.from().getCode(), i.to().getCode(), i.amount()))
+                    .toList();
+            String body = objectMapper.writeValueAsString(dtos);
+            HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/rates/" + versionId + "/convert/batch", token)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+            List<ConversionResultDTO> results = objectMapper.readValue(response.body(), new TypeReference<>() {});
+            return results.stream().map(r -> r.result).toList();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error converting amounts with rate version " + versionId, e);
+        }
+    }
+
+    /**
+     * Fetches a version, revalidating a previously downloaded copy with its ETag.
+     * An unchanged version is answered with 304 and served from the given cache, which keeps
+     * the {@value #CACHED_VERSIONS} most recently fetched URLs.
+     */
+    private Optional<ExchangeRateVersion> fetchVersion(Map<String, CachedVersion> cache, String url, String token) throws Exception {
+        CachedVersion cached;
+        synchronized (cache) {
+            cached = cache.get(url);
+        }
+        HttpRequest.Builder builder = HttpClientHelper.requestBuilder(url, token).GET();
+        if (cached != null) {
+            builder.header("If-None-Match", cached.etag());
+        }
+        HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        // callers get a copy, since a version can be changed (setActive) and the cached one must not be
+        if (response.statusCode() == 304 && cached != null) return Optional.of(cached.version().copy());
+        if (response.statusCode() == 404) {
+            synchronized (cache) {
+                cache.remove(url);
+            }
+            return Optional.empty();
+        }
+        if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+        ExchangeRateVersion version = mapToDomain(objectMapper.readValue(response.body(), ExchangeRateVersionDTO.class));
+        Optional<String> etag = response.headers().firstValue("ETag");
+        synchronized (cache) {
+            if (etag.isPresent()) {
+                cache.put(url, new CachedVersion(etag.get(), version));
+            } else {
+                cache.remove(url);
+            }
+        }
+        return Optional.of(version.copy());
+    }
+
+    private static Map<String, CachedVersion> lruCache() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedVersion> eldest) {
+                return size() > CACHED_VERSIONS;
+            }
+        };
+    }
+
+    // the codes of a version the server returns belong to an accepted version, so they are registered
     private ExchangeRateVersion mapToDomain(ExchangeRateVersionDTO dto) {
         Map<Currency, Double> currencyRates = new HashMap<>();
         if (dto.rates != null) {
             dto.rates.forEach((code, rate) ->
-                    currencyRates.put(Currency.fromCode(code), rate.doubleValue()));
+                    currencyRates.put(Currency.register(code), rate.doubleValue()));
         }
         return new ExchangeRateVersion(
                 dto.id,
                 dto.versionName,
-                Currency.fromCode(dto.baseCurrency),
+                Currency.register(dto.baseCurrency),
                 currencyRates,
                 dto.uploadedAt,
                 dto.uploadedBy,
@@ -154,4 +309,42 @@ public class ExchangeRateRepository {
         public String uploadedBy;
         public boolean active;
     }
+
+    static class VersionSummaryDTO {
+        public VersionSummaryDTO() {}
+        public String id;
+        public String versionName;
+        public String baseCurrency;
+        public LocalDateTime uploadedAt;
+        public String uploadedBy;
+        public boolean active;
+        public long rateCount;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class AsOfConversionDTO {
+        public AsOfConversionDTO() {}
+        public String versionId;
+        public BigDecimal result;
+    }
+
+    static class ConversionItemDTO {
+        public ConversionItemDTO() {}
+        public ConversionItemDTO(String from, String to, BigDecimal amount) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+        }
+        public String from;
+        public String to;
+        public BigDecimal amount;
+    }
+
+    static class ConversionResultDTO {
+        public ConversionResultDTO() {}
+        public String from;
+        public String to;
+        public BigDecimal amount;
+        public BigDecimal result;
+    }
 }
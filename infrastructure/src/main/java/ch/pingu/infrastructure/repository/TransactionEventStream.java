@@ -0,0 +1,169 @@
+package ch.pingu.infrastructure.repository;
+
+import ch.pingu.domain.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Live feed of transaction changes from the server-sent events endpoint.
+ *
+ * Reads the stream on a daemon thread and hands every event to the listener on
+ * that thread. When the connection drops it reconnects with the id of the last
+ * event received, so no change is missed; if the server can no longer replay
+ * that far back, the listener gets a RESET event and should reload its data.
+ */
+public class TransactionEventStream implements AutoCloseable {
+
+    private static final long INITIAL_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    public enum Type { CREATED, REVERTED, STATUS_CHANGED, RESET }
+
+    /**
+     * One change; transaction is null for RESET
+     */
+    public record TransactionEvent(String id, Type type, Transaction transaction) {}
+
+    private final HttpClient httpClient;
+    private final String url;
+    private final String token;
+    private final Function<String, Transaction> parser;
+    private final Consumer<TransactionEvent> listener;
+    private final Thread reader;
+
+    private volatile boolean closed;
+    private volatile InputStream body;
+    private volatile String lastEventId;
+
+    TransactionEventStream(HttpClient httpClient, String url, String token,
+                           Function<String, Transaction> parser, Consumer<TransactionEvent> listener) {
+        this.httpClient = httpClient;
+        this.url = url;
+        this.token = token;
+        this.parser = parser;
+        this.listener = listener;
+        this.reader = new Thread(this::run, "transaction-events");
+        this.reader.setDaemon(true);
+    }
+
+    void start() {
+        reader.start();
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reader.interrupt();
+        InputStream current = body;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // closing only ends the read loop
+            }
+        }
+    }
+
+    private void run() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while (!closed) {
+            try {
+                HttpRequest.Builder request = HttpClientHelper.requestBuilder(url, token)
+                        .header("Accept", "text/event-stream")
+                        .GET();
+                if (lastEventId != null) {
+                    request.header("Last-Event-ID", lastEventId);
+                }
+                HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                body = response.body();
+                try (InputStream in = body) {
+                    if (response.statusCode() != 200) throw new IOException("HTTP " + response.statusCode());
+                    backoff = INITIAL_BACKOFF_MS;
+                    read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+                }
+            } catch (IOException | RuntimeException e) {
+                // reconnect below unless closed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    // event stream framing: "field:value" lines, a blank line ends the event, ":" starts a comment
+    private void read(BufferedReader in) throws IOException {
+        String id = null;
+        String name = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (!closed && (line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (name != null) {
+                    dispatch(id, name, data.toString());
+                }
+                id = null;
+                name = null;
+                data.setLength(0);
+            } else if (!line.startsWith(":")) {
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(colon + 1);
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+                switch (field) {
+                    case "id" -> id = value;
+                    case "event" -> name = value;
+                    case "data" -> data.append(data.length() > 0 ? "\n" : "").append(value);
+                    default -> { }
+                }
+            }
+        }
+    }
+
+    private void dispatch(String id, String name, String data) {
+        Type type;
+        switch (name) {
+            case "created" -> type = Type.CREATED;
+            case "reverted" -> type = Type.REVERTED;
+            case "status-changed" -> type = Type.STATUS_CHANGED;
+            case "reset" -> type = Type.RESET;
+            default -> {
+                return;
+            }
+        }
+        if (id != null) {
+            lastEventId = id;
+        }
+        Transaction transaction;
+        try {
+            transaction = type == Type.RESET ? null : parser.apply(data);
+        } catch (RuntimeException e) {
+            // skipped rather than retried: a replay would fail on the same event again
+            return;
+        }
+        listener.accept(new TransactionEvent(id, type, transaction));
+    }
+}
@@ -1,22 +1,122 @@
 package ch.pingu.infrastructure.repository;
 
 import ch.pingu.domain.model.*;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 public class TransactionRepository {
 
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int BULK_SIZE = 1000;
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int WRITE_ATTEMPTS = 3;
+    private static final Duration WRITE_TIMEOUT = Duration.ofSeconds(15);
+
+    /**
+     * One page of transactions; nextCursor is null on the last page, totalCount only set if requested
+     */
+    public record TransactionPage(List<Transaction> items, String nextCursor, Long totalCount) {}
+
+    /**
+     * Criteria evaluated by the server; unset criteria do not restrict the result.
+     * The date range applies to the execution date and includes both ends.
+     */
+    public static class TransactionQuery {
+        private LocalDate from;
+        private LocalDate to;
+        private Currency currency;
+        private TransactionStatus status;
+        private String consultantId;
+        private String customerId;
+        private String sortBy = "createdAt";
+        private boolean ascending;
+
+        public TransactionQuery executedBetween(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public TransactionQuery currency(Currency currency) {
+            this.currency = currency;
+            return this;
+        }
+
+        public TransactionQuery status(TransactionStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public TransactionQuery consultant(String consultantId) {
+            this.consultantId = consultantId;
+            return this;
+        }
+
+        public TransactionQuery customer(String customerId) {
+            this.customerId = customerId;
+            return this;
+        }
+
+        /**
+         * Sort by "createdAt" (default, newest first) or "executionDate"
+         */
+        public TransactionQuery sortBy(String property, boolean ascending) {
+            this.sortBy = property;
+            this.ascending = ascending;
+            return this;
+        }
+
+        /**
+         * Whether the transaction satisfies these criteria, for keeping a loaded result current as changes arrive
+         */
+        public boolean matches(Transaction transaction) {
+            LocalDateTime executed = transaction.getExecutionDate();
+            if ((from != null || to != null) && executed == null) return false;
+            if (from != null && executed.toLocalDate().isBefore(from)) return false;
+            if (to != null && executed.toLocalDate().isAfter(to)) return false;
+            if (currency != null && !currency.equals(transaction.getSourceAmount().getCurrency())
+                    && !currency.equals(transaction.getTargetAmount().getCurrency())) return false;
+            if (status != null && status != transaction.getStatus()) return false;
+            if (consultantId != null && !consultantId.equals(transaction.getConsultantId())) return false;
+            return customerId == null || customerId.equals(transaction.getCustomerId());
+        }
+
+        String toQueryString() {
+            StringBuilder params = new StringBuilder("sort=").append(sortBy).append(ascending ? ",asc" : ",desc");
+            if (from != null) params.append("&from=").append(from);
+            if (to != null) params.append("&to=").append(to);
+            if (currency != null) params.append("&currency=").append(currency.getCode());
+            if (status != null) params.append("&status=").append(status.name());
+            if (consultantId != null) params.append("&consultantId=").append(encode(consultantId));
+            if (customerId != null) params.append("&customerId=").append(encode(customerId));
+            return params.toString();
+        }
+    }
+
     private final String baseUrl;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
@@ -46,21 +146,127 @@ public class TransactionRepository {
     }
 
     public List<Transaction> findAll(String token) {
-        return fetchList(baseUrl + "/api/transactions", token);
+        return query(new TransactionQuery(), token);
     }
 
     public List<Transaction> findByConsultantId(String consultantId, String token) {
-        return fetchList(baseUrl + "/api/transactions?consultantId=" + consultantId, token);
+        return query(new TransactionQuery().consultant(consultantId), token);
+    }
+
+    /**
+     * Fetches all transactions matching the query; filtering and sorting happen in the database
+     */
+    public List<Transaction> query(TransactionQuery query, String token) {
+        List<Transaction> transactions = new ArrayList<>();
+        pages(query, DEFAULT_PAGE_SIZE, token).forEachRemaining(transactions::addAll);
+        return transactions;
+    }
+
+    /**
+     * Fetches all transactions matching the query into a column store. Each page is
+     * copied into the table as it arrives, so only one page is ever held as objects.
+     */
+    public TransactionTable queryTable(TransactionQuery query, String token) {
+        TransactionTable table = new TransactionTable();
+        pages(query, DEFAULT_PAGE_SIZE, token).forEachRemaining(page -> page.forEach(table::add));
+        return table;
+    }
+
+    /**
+     * Fetches one page of matching transactions. Pass null as cursor for the
+     * first page and the previous page's nextCursor afterwards.
+     */
+    public TransactionPage fetchPage(TransactionQuery query, String cursor, int size, boolean includeTotal, String token) {
+        StringBuilder url = new StringBuilder(baseUrl).append("/api/transactions/query?")
+                .append(query.toQueryString())
+                .append("&size=").append(size);
+        if (cursor != null) url.append("&cursor=").append(encode(cursor));
+        if (includeTotal) url.append("&includeTotal=true");
+        try {
+            HttpRequest request = HttpClientHelper.requestBuilder(url.toString(), token)
+                    .GET()
+                    .build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+                TransactionPageDTO dto = objectMapper.readValue(body, TransactionPageDTO.class);
+                Long total = response.headers().firstValue("X-Total-Count").map(Long::valueOf).orElse(null);
+                List<Transaction> items = new ArrayList<>(dto.items.size());
+                dto.items.forEach(item -> items.add(mapToDomain(item)));
+                return new TransactionPage(items, dto.nextCursor, total);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching transactions", e);
+        }
+    }
+
+    /**
+     * Iterates over all pages of matching transactions, requesting the next one only when it is needed
+     */
+    public Iterator<List<Transaction>> pages(TransactionQuery query, int pageSize, String token) {
+        return new Iterator<>() {
+            private String cursor;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                return !done;
+            }
+
+            @Override
+            public List<Transaction> next() {
+                if (done) throw new NoSuchElementException();
+                TransactionPage page = fetchPage(query, cursor, pageSize, false, token);
+                cursor = page.nextCursor();
+                done = cursor == null;
+                return page.items();
+            }
+        };
+    }
+
+    /**
+     * Downloads all matching transactions as "ndjson" or "csv" straight to the target file.
+     * The body is written to a temporary file next to the target and moved into place once
+     * complete, so a failed download never leaves a partial export behind.
+     */
+    public Path export(TransactionQuery query, String format, Path target, String token) {
+        String url = baseUrl + "/api/transactions/export?" + query.toQueryString() + "&format=" + encode(format);
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            HttpRequest request = HttpClientHelper.requestBuilder(url, token)
+                    .GET()
+                    .build();
+            HttpResponse<Path> response = httpClient.send(request, HttpResponse.BodyHandlers.ofFile(partial));
+            if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+            return Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (RuntimeException e) {
+            deleteQuietly(partial);
+            throw e;
+        } catch (Exception e) {
+            deleteQuietly(partial);
+            throw new RuntimeException("Error exporting transactions", e);
+        }
     }
 
+    /**
+     * Creates or replaces the transaction. The request carries an idempotency key derived
+     * from its content, so it is retried when no answer arrives, and saving the same
+     * transaction again after a failure can never store it twice.
+     */
     public Transaction save(Transaction transaction, String token) {
         try {
             String body = objectMapper.writeValueAsString(mapToDTO(transaction));
+            // same transaction in the same state, same key; a changed transaction is a new write
+            String key = "create-" + UUID.nameUUIDFromBytes(body.getBytes(StandardCharsets.UTF_8));
             HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/transactions", token)
                     .header("Content-Type", "application/json")
+                    .header(IDEMPOTENCY_KEY, key)
+                    .timeout(WRITE_TIMEOUT)
                     .POST(HttpRequest.BodyPublishers.ofString(body))
                     .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = sendWithRetry(request);
             if (response.statusCode() / 100 != 2) throw new RuntimeException("HTTP " + response.statusCode());
             return mapToDomain(objectMapper.readValue(response.body(), TransactionDTO.class));
         } catch (RuntimeException e) {
@@ -70,14 +276,66 @@ public class TransactionRepository {
         }
     }
 
+    /**
+     * Creates the transactions with bulk requests of up to {@value #BULK_SIZE} each and returns
+     * their ids in order. Each request is stored as a whole or not at all.
+     */
+    public List<String> saveAll(List<Transaction> transactions, String token) {
+        List<String> ids = new ArrayList<>(transactions.size());
+        for (int start = 0; start < transactions.size(); start += BULK_SIZE) {
+            List<TransactionDTO> chunk = new ArrayList<>(BULK_SIZE);
+            transactions.subList(start, Math.min(transactions.size(), start + BULK_SIZE))
+                    .forEach(t -> chunk.add(mapToDTO(t)));
+            try {
+                byte[] body = objectMapper.writeValueAsBytes(chunk);
+                HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/transactions/bulk", token)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build();
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream in = response.body()) {
+                    if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
+                    ids.addAll(objectMapper.readValue(in, BulkCreateResultDTO.class).ids);
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Error saving transactions", e);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Thrown by revert when the server reports that the transaction had already been reverted,
+     * with the transaction as the server holds it
+     */
+    public static class AlreadyRevertedException extends RuntimeException {
+        private final Transaction transaction;
+
+        public AlreadyRevertedException(Transaction transaction) {
+            super("Transaction " + transaction.getId() + " was already reverted");
+            this.transaction = transaction;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
     public Transaction revert(String id, String reason, String token) {
         try {
             String body = objectMapper.writeValueAsString(Map.of("reason", reason));
             HttpRequest request = HttpClientHelper.requestBuilder(baseUrl + "/api/transactions/" + id + "/revert", token)
                     .header("Content-Type", "application/json")
+                    .header(IDEMPOTENCY_KEY, "revert-" + UUID.randomUUID())
+                    .timeout(WRITE_TIMEOUT)
                     .POST(HttpRequest.BodyPublishers.ofString(body))
                     .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = sendWithRetry(request);
+            if (response.statusCode() == 409) {
+                throw new AlreadyRevertedException(mapToDomain(objectMapper.readValue(response.body(), TransactionDTO.class)));
+            }
             if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
             return mapToDomain(objectMapper.readValue(response.body(), TransactionDTO.class));
         } catch (RuntimeException e) {
@@ -87,26 +345,52 @@ public class TransactionRepository {
         }
     }
 
-    private List<Transaction> fetchList(String url, String token) {
+    /**
+     * Opens a live feed of created, reverted and changed transactions, optionally limited to one
+     * consultant. The listener is called on a background thread; close the stream to stop it.
+     */
+    public TransactionEventStream subscribe(String consultantId, Consumer<TransactionEventStream.TransactionEvent> listener, String token) {
+        String url = baseUrl + "/api/transactions/events" + (consultantId == null ? "" : "?consultantId=" + encode(consultantId));
+        TransactionEventStream stream = new TransactionEventStream(httpClient, url, token, json -> {
+            try {
+                return mapToDomain(objectMapper.readValue(json, TransactionDTO.class));
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading transaction event", e);
+            }
+        }, listener);
+        stream.start();
+        return stream;
+    }
+
+    // only for requests with an idempotency key: a retry replays the result if the first attempt got through
+    private HttpResponse<String> sendWithRetry(HttpRequest request) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                if (attempt == WRITE_ATTEMPTS) throw e;
+                Thread.sleep(250L * attempt);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
         try {
-            HttpRequest request = HttpClientHelper.requestBuilder(url, token)
-                    .GET()
-                    .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) throw new RuntimeException("HTTP " + response.statusCode());
-            List<TransactionDTO> dtos = objectMapper.readValue(response.body(), new TypeReference<>() {});
-            return dtos.stream().map(this::mapToDomain).toList();
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException("Error fetching transactions", e);
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // the failure that got us here is the one worth reporting
         }
     }
 
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // a stored transaction's currencies were accepted by the server, so unknown codes are registered
     private Transaction mapToDomain(TransactionDTO dto) {
-        Money source = new Money(new BigDecimal(dto.sourceAmount.amount.trim()), Currency.fromCode(dto.sourceAmount.currency));
-        Money target = new Money(new BigDecimal(dto.targetAmount.amount.trim()), Currency.fromCode(dto.targetAmount.currency));
-        return new Transaction(
+        Money source = new Money(new BigDecimal(dto.sourceAmount.amount.trim()), Currency.register(dto.sourceAmount.currency));
+        Money target = new Money(new BigDecimal(dto.targetAmount.amount.trim()), Currency.register(dto.targetAmount.currency));
+        Transaction transaction = new Transaction(
                 dto.id,
                 dto.consultantId,
                 dto.customerId,
@@ -119,6 +403,10 @@ public class TransactionRepository {
                 dto.createdBy,
                 TransactionStatus.valueOf(dto.status)
         );
+        if (dto.revertedAt != null) {
+            transaction.restoreRevert(dto.revertReason, dto.revertedAt, dto.revertedBy);
+        }
+        return transaction;
     }
 
     private TransactionDTO mapToDTO(Transaction t) {
@@ -144,6 +432,18 @@ public class TransactionRepository {
         return dto;
     }
 
+    static class BulkCreateResultDTO {
+        public BulkCreateResultDTO() {}
+        public int count;
+        public List<String> ids;
+    }
+
+    static class TransactionPageDTO {
+        public TransactionPageDTO() {}
+        public List<TransactionDTO> items;
+        public String nextCursor;
+    }
+
     // DTO matching backend JSON shape — needs no-arg constructor for Jackson
     static class TransactionDTO {
         public TransactionDTO() {}
@@ -33,6 +33,9 @@ public class CurrencyConverterView extends BaseView {
     private Label exchangeRateLabel;
     private StyledTextField customerIdField;
     private StyledComboBox<TransactionStatus> statusCombo;
+    // a save that got no answer is repeated with the same transaction, so the server can recognize it
+    private Transaction unsavedTransaction;
+    private String unsavedInputs;
     
     @Override
     protected void buildView() {
@@ -182,26 +185,38 @@ public class CurrencyConverterView extends BaseView {
             }
             
             ExchangeRateVersion rateVersion = rateVersionOpt.get();
-            CurrencyConversionService conversionService = context.getCurrencyConversionService();
+            String inputs = String.join("|", amountField.getText(), source.getCode(), target.getCode(),
+                customerId, status.name(), rateVersion.getId(), currentUser.getId());
             
-            Money sourceMoney = new Money(amount, source);
-            Money targetMoney = conversionService.convert(sourceMoney, target, rateVersion);
-            double exchangeRate = conversionService.getExchangeRateAsDouble(source, target, rateVersion);
-            
-            Transaction transaction = Transaction.create(
-                currentUser.getId(),
-                customerId,
-                sourceMoney,
-                targetMoney,
-                exchangeRate,
-                rateVersion.getId(),
-                LocalDateTime.now(),
-                currentUser.getUsername()
-            );
-            
-            transaction.updateStatus(status);
+            Transaction transaction;
+            if (unsavedTransaction != null && inputs.equals(unsavedInputs)) {
+                transaction = unsavedTransaction;
+            } else {
+                CurrencyConversionService conversionService = context.getCurrencyConversionService();
+                
+                Money sourceMoney = new Money(amount, source);
+                Money targetMoney = conversionService.convert(sourceMoney, target, rateVersion);
+                double exchangeRate = conversionService.getExchangeRateAsDouble(source, target, rateVersion);
+                
+                transaction = Transaction.create(
+                    currentUser.getId(),
+                    customerId,
+                    sourceMoney,
+                    targetMoney,
+                    exchangeRate,
+                    rateVersion.getId(),
+                    LocalDateTime.now(),
+                    currentUser.getUsername()
+                );
+                
+                transaction.updateStatus(status);
+                unsavedTransaction = transaction;
+                unsavedInputs = inputs;
+            }
             
             context.getTransactionRepository().save(transaction, context.getJwtToken());
+            unsavedTransaction = null;
+            unsavedInputs = null;
             
             showSuccess("Transaction saved successfully!");
             handleClear();
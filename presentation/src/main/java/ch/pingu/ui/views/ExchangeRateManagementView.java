@@ -1,22 +1,20 @@
 package ch.pingu.ui.views;
 
 import ch.pingu.AppContext;
-import ch.pingu.domain.model.Currency;
 import ch.pingu.domain.model.ExchangeRateVersion;
 import ch.pingu.domain.model.User;
+import ch.pingu.infrastructure.parser.ExchangeRateFileParser;
 import ch.pingu.ui.components.buttons.NeutralButton;
 import ch.pingu.ui.components.buttons.PrimaryButton;
 import ch.pingu.ui.components.buttons.SecondaryButton;
 import ch.pingu.ui.components.buttons.WarningButton;
 import ch.pingu.ui.components.dialogs.DialogUtils;
-import ch.pingu.ui.components.inputs.StyledTextArea;
 import ch.pingu.ui.components.labels.FieldLabel;
 import ch.pingu.ui.components.labels.InfoLabel;
 import ch.pingu.ui.components.labels.SectionLabel;
 import ch.pingu.ui.components.labels.TitleLabel;
 import ch.pingu.ui.components.panels.CardPanel;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import javafx.concurrent.Task;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
@@ -24,22 +22,33 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.stage.FileChooser;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.nio.file.Files;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class ExchangeRateManagementView extends BaseView {
     
-    private StyledTextArea previewArea;
+    private static final int PREVIEW_MAX_LINES = 500;
+    private static final int PREVIEW_MAX_LINE_LENGTH = 200;
+    
+    private ListView<String> previewList;
     private ListView<String> versionsListView;
+    private InfoLabel fileLabel;
+    private ProgressBar progressBar;
+    private HBox buttonBox;
     private File selectedFile;
     
     @Override
     protected void buildView() {
-        this.previewArea = new StyledTextArea();
-        this.previewArea.asReadOnly();
+        this.previewList = new ListView<>();
+        this.previewList.setStyle("-fx-font-family: monospace;");
         this.versionsListView = new ListView<>();
+        this.progressBar = new ProgressBar(0);
+        this.progressBar.setVisible(false);
         
         AppContext context = AppContext.getInstance();
         User currentUser = context.getCurrentUser();
@@ -89,13 +98,13 @@ public class ExchangeRateManagementView extends BaseView {
         PrimaryButton selectFileButton = new PrimaryButton("Select JSON File");
         selectFileButton.setOnAction(e -> selectFile());
         
-        InfoLabel fileLabel = new InfoLabel("No file selected");
+        fileLabel = new InfoLabel("No file selected");
         fileBox.getChildren().addAll(selectFileButton, fileLabel);
         FieldLabel previewLabel = new FieldLabel("Preview:");
         
-        previewArea.setPrefRowCount(10);
+        previewList.setPrefHeight(220);
         
-        HBox buttonBox = new HBox(10);
+        buttonBox = new HBox(10);
         buttonBox.setAlignment(Pos.CENTER_LEFT);
         
         PrimaryButton uploadButton = new PrimaryButton("Upload and Activate");
@@ -104,14 +113,14 @@ public class ExchangeRateManagementView extends BaseView {
         WarningButton validateButton = new WarningButton("Validate Only");
         validateButton.setOnAction(e -> validateFile());
         
-        buttonBox.getChildren().addAll(uploadButton, validateButton);
+        buttonBox.getChildren().addAll(uploadButton, validateButton, progressBar);
         
         box.getChildren().addAll(
             sectionTitle,
             instructionLabel,
             fileBox,
             previewLabel,
-            previewArea,
+            previewList,
             buttonBox
         );
         
@@ -151,100 +160,133 @@ public class ExchangeRateManagementView extends BaseView {
         selectedFile = fileChooser.showOpenDialog(container.getScene().getWindow());
         
         if (selectedFile != null) {
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(selectedFile);
-                previewArea.setText(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root));
-            } catch (Exception e) {
-                showError("Failed to read file: " + e.getMessage());
-            }
+            fileLabel.setText(selectedFile.getName());
+            loadPreview(selectedFile);
         }
     }
     
+    /**
+     * Shows the first lines of the file as-is. The list only renders visible
+     * rows, and long lines are cut so a minified file stays cheap to display.
+     */
+    private void loadPreview(File file) {
+        Task<List<String>> task = new Task<>() {
+            @Override
+            protected List<String> call() throws Exception {
+                List<String> lines = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (lines.size() == PREVIEW_MAX_LINES) {
+                            lines.add("... (preview truncated)");
+                            break;
+                        }
+                        lines.add(line.length() > PREVIEW_MAX_LINE_LENGTH
+                            ? line.substring(0, PREVIEW_MAX_LINE_LENGTH) + " ..."
+                            : line);
+                    }
+                }
+                return lines;
+            }
+        };
+        task.setOnSucceeded(e -> previewList.getItems().setAll(task.getValue()));
+        task.setOnFailed(e -> showError("Failed to read file: " + task.getException().getMessage()));
+        startInBackground(task, "rate-file-preview");
+    }
+    
     private void validateFile() {
-        if (selectedFile == null) {
-            showError("Please select a file first");
-            return;
-        }
-        
-        try {
-            parseExchangeRateFile(selectedFile);
-            showSuccess("File is valid!");
-        } catch (Exception e) {
-            showError("Validation failed: " + e.getMessage());
-        }
+        runValidation(false);
     }
     
     private void uploadExchangeRates() {
+        runValidation(true);
+    }
+    
+    /**
+     * Parses and validates the selected file off the UI thread and, if requested
+     * and the whole file is valid, uploads and activates it
+     */
+    private void runValidation(boolean upload) {
         if (selectedFile == null) {
             showError("Please select a file first");
             return;
         }
         
-        try {
-            ExchangeRateVersion newVersion = parseExchangeRateFile(selectedFile);
-            
-            AppContext context = AppContext.getInstance();
-            
-            context.getExchangeRateRepository().save(newVersion, context.getJwtToken());
-
-            context.getExchangeRateRepository().setActiveVersion(newVersion.getId(), context.getJwtToken());
-            
-            showSuccess("Exchange rates uploaded and activated successfully!");
-            
-            selectedFile = null;
-            previewArea.clear();
-            loadVersions();
-            
-        } catch (Exception e) {
-            showError("Upload failed: " + e.getMessage());
-        }
-    }
-    
-    private ExchangeRateVersion parseExchangeRateFile(File file) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(file);
-        
-        if (!root.has("versionName")) {
-            throw new IllegalArgumentException("Missing 'versionName' field");
-        }
-        if (!root.has("baseCurrency")) {
-            throw new IllegalArgumentException("Missing 'baseCurrency' field");
-        }
-        if (!root.has("rates")) {
-            throw new IllegalArgumentException("Missing 'rates' field");
-        }
-        
-        String versionName = root.get("versionName").asText();
-        String baseCurrencyCode = root.get("baseCurrency").asText();
-        Currency baseCurrency = Currency.fromCode(baseCurrencyCode);
-        
-        JsonNode ratesNode = root.get("rates");
-        Map<Currency, Double> rates = new HashMap<>();
-        
-        ratesNode.fields().forEachRemaining(entry -> {
-            try {
-                Currency currency = Currency.fromCode(entry.getKey());
-                double rate = entry.getValue().asDouble();
-                
-                if (rate <= 0) {
-                    throw new IllegalArgumentException("Rate for " + currency + " must be positive");
+        File file = selectedFile;
+        AppContext context = AppContext.getInstance();
+        String uploadedBy = context.getCurrentUser().getUsername();
+        String token = context.getJwtToken();
+        
+        Task<ExchangeRateFileParser.ParseResult> task = new Task<>() {
+            @Override
+            protected ExchangeRateFileParser.ParseResult call() throws Exception {
+                ExchangeRateFileParser.ParseResult result = new ExchangeRateFileParser()
+                    .parse(file.toPath(), progress -> updateProgress(progress, 1.0));
+                if (upload && result.isValid()) {
+                    // the codes are uploaded as parsed; currencies are registered from the accepted version
+                    ExchangeRateVersion newVersion = context.getExchangeRateRepository().create(result.getVersionName(),
+                        result.getBaseCurrency(), result.getRates(), uploadedBy, token);
+                    context.getExchangeRateRepository().setActiveVersion(newVersion.getId(), token);
                 }
-                
-                rates.put(currency, rate);
-            } catch (IllegalArgumentException e) {
-                throw new RuntimeException("Invalid currency: " + entry.getKey(), e);
+                return result;
+            }
+        };
+        
+        progressBar.progressProperty().bind(task.progressProperty());
+        progressBar.setVisible(true);
+        buttonBox.setDisable(true);
+        
+        task.setOnSucceeded(e -> {
+            finishValidation();
+            ExchangeRateFileParser.ParseResult result = task.getValue();
+            if (!result.isValid()) {
+                showValidationErrors(result);
+                return;
             }
+            if (upload) {
+                showSuccess("Exchange rates uploaded and activated successfully!");
+                selectedFile = null;
+                fileLabel.setText("No file selected");
+                previewList.getItems().clear();
+                loadVersions();
+            } else {
+                showSuccess("File is valid! " + result.getRates().size() + " rates found.");
+            }
+        });
+        task.setOnFailed(e -> {
+            finishValidation();
+            showError((upload ? "Upload failed: " : "Validation failed: ") + task.getException().getMessage());
         });
         
-        if (!rates.containsKey(baseCurrency) || Math.abs(rates.get(baseCurrency) - 1.0) > 0.0001) {
-            throw new IllegalArgumentException("Base currency rate must be 1.0");
+        startInBackground(task, "rate-file-validation");
+    }
+    
+    private void finishValidation() {
+        progressBar.progressProperty().unbind();
+        progressBar.setVisible(false);
+        buttonBox.setDisable(false);
+    }
+    
+    private void showValidationErrors(ExchangeRateFileParser.ParseResult result) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Validation failed with " + result.getErrors().size() + " error(s), nothing was uploaded:");
+        result.getErrors().forEach(error -> lines.add(error.toString()));
+        previewList.getItems().setAll(lines);
+        
+        String summary = result.getErrors().stream()
+            .limit(10)
+            .map(ExchangeRateFileParser.ValidationError::toString)
+            .collect(Collectors.joining("\n"));
+        if (result.getErrors().size() > 10) {
+            summary += "\n... and " + (result.getErrors().size() - 10) + " more (see preview)";
         }
-        
-        AppContext context = AppContext.getInstance();
-        User currentUser = context.getCurrentUser();
-        
-        return ExchangeRateVersion.create(versionName, baseCurrency, rates, currentUser.getUsername());
+        showError("Validation failed:\n" + summary);
+    }
+    
+    private void startInBackground(Task<?> task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
     }
     
     private void loadVersions() {
@@ -253,15 +295,15 @@ public class ExchangeRateManagementView extends BaseView {
         
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
         
-        context.getExchangeRateRepository().findAll(context.getJwtToken()).forEach(version -> {
+        context.getExchangeRateRepository().findAllSummaries(context.getJwtToken()).forEach(version -> {
             String display = String.format("%s%s - %s (Base: %s, %d rates)",
-                version.isActive() ? "★ " : "  ",
-                version.getVersionName(),
-                version.getUploadedAt().format(formatter),
-                version.getBaseCurrency().getCode(),
-                version.getRates().size()
+                version.active() ? "★ " : "  ",
+                version.versionName(),
+                version.uploadedAt().format(formatter),
+                version.baseCurrency().getCode(),
+                version.rateCount()
             );
-            versionsListView.getItems().add(version.getId() + "|" + display);
+            versionsListView.getItems().add(version.id() + "|" + display);
         });
     }
     
@@ -2,7 +2,8 @@ package ch.pingu.ui.views;
 
 import ch.pingu.AppContext;
 import ch.pingu.domain.model.*;
-import ch.pingu.domain.service.TransactionService;
+import ch.pingu.infrastructure.repository.TransactionEventStream;
+import ch.pingu.infrastructure.repository.TransactionRepository;
 import ch.pingu.ui.components.buttons.DangerButton;
 import ch.pingu.ui.components.buttons.InfoButton;
 import ch.pingu.ui.components.buttons.NeutralButton;
@@ -13,25 +14,51 @@ import ch.pingu.ui.components.inputs.StyledTextField;
 import ch.pingu.ui.components.labels.FieldLabel;
 import ch.pingu.ui.components.labels.TitleLabel;
 import ch.pingu.ui.components.panels.FilterPanel;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TransactionListView extends BaseView {
     
-    private TableView<TransactionRow> tableView;
-    private ObservableList<TransactionRow> transactionData;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    
+    private TableView<TransactionTable.Row> tableView;
+    // the loaded transactions in columns; the table's items are views of its rows
+    private TransactionTable table;
+    private ObservableList<TransactionTable.Row> transactionData;
     private StyledComboBox<String> statusFilter;
     private StyledComboBox<Currency> currencyFilter;
     private StyledTextField customerFilter;
+    private DatePicker fromDateFilter;
+    private DatePicker toDateFilter;
+    // criteria of the rows currently shown, so pushed changes can be applied without a reload
+    private TransactionRepository.TransactionQuery shownQuery;
+    private TransactionEventStream events;
+    private final Queue<TransactionEventStream.TransactionEvent> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean eventsScheduled = new AtomicBoolean();
     
     @Override
     protected void buildView() {
@@ -46,6 +73,92 @@ public class TransactionListView extends BaseView {
         container.getChildren().addAll(title, filterBox, tableView, actionBox);
         
         loadTransactions();
+        subscribeToChanges();
+    }
+    
+    /**
+     * Keeps the table current with changes pushed by the server. Events are
+     * queued on the stream thread and applied in batches on the FX thread; the
+     * subscription ends when the view is replaced.
+     */
+    private void subscribeToChanges() {
+        AppContext context = AppContext.getInstance();
+        User currentUser = context.getCurrentUser();
+        if (currentUser == null) return;
+        
+        String consultantId = currentUser.isAdmin() ? null : currentUser.getId();
+        events = context.getTransactionRepository().subscribe(consultantId, event -> {
+            pendingEvents.add(event);
+            if (eventsScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::applyPendingEvents);
+            }
+        }, context.getJwtToken());
+        container.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null && newScene == null) {
+                events.close();
+            }
+        });
+    }
+    
+    private void applyPendingEvents() {
+        eventsScheduled.set(false);
+        // last state per transaction in this batch, in the order they first changed
+        Map<String, Transaction> changed = new LinkedHashMap<>();
+        TransactionEventStream.TransactionEvent event;
+        while ((event = pendingEvents.poll()) != null) {
+            if (event.type() == TransactionEventStream.Type.RESET) {
+                // changes were missed, only a reload brings the table back in line
+                pendingEvents.clear();
+                reloadShown();
+                return;
+            }
+            changed.put(event.transaction().getId(), event.transaction());
+        }
+        if (changed.isEmpty() || shownQuery == null || table == null) return;
+        
+        // list position of each table row; rows taken off the list stay in the table until the next load
+        int[] listIndex = new int[table.size()];
+        Arrays.fill(listIndex, -1);
+        for (int i = 0; i < transactionData.size(); i++) {
+            listIndex[transactionData.get(i).index()] = i;
+        }
+        List<TransactionTable.Row> added = new ArrayList<>();
+        BitSet removed = new BitSet();
+        for (Transaction transaction : changed.values()) {
+            int row = table.lastIndexOf(transaction.getId());
+            int index = row < 0 ? -1 : listIndex[row];
+            boolean shown = shownQuery.matches(transaction);
+            if (index < 0) {
+                if (shown) added.add(table.row(table.add(transaction)));
+            } else if (shown) {
+                table.set(row, transaction);
+                // a new view, so the table redraws the row
+                transactionData.set(index, table.row(row));
+            } else {
+                removed.set(row);
+            }
+        }
+        if (!removed.isEmpty()) {
+            transactionData.removeIf(view -> removed.get(view.index()));
+        }
+        // newest first, as listed by the server
+        Collections.reverse(added);
+        transactionData.addAll(0, added);
+    }
+    
+    private void reloadShown() {
+        AppContext context = AppContext.getInstance();
+        if (shownQuery == null) return;
+        show(context.getTransactionRepository().queryTable(shownQuery, context.getJwtToken()));
+    }
+    
+    private void show(TransactionTable loaded) {
+        table = loaded;
+        List<TransactionTable.Row> views = new ArrayList<>(loaded.size());
+        for (int row = 0; row < loaded.size(); row++) {
+            views.add(loaded.row(row));
+        }
+        transactionData.setAll(views);
     }
     
     private HBox createFilterPanel() {
@@ -70,6 +183,14 @@ public class TransactionListView extends BaseView {
         customerFilter = new StyledTextField("Customer ID");
         customerFilter.setPrefWidth(150);
         
+        fromDateFilter = new DatePicker();
+        fromDateFilter.setPromptText("From");
+        fromDateFilter.setPrefWidth(130);
+        
+        toDateFilter = new DatePicker();
+        toDateFilter.setPromptText("To");
+        toDateFilter.setPrefWidth(130);
+        
         SecondaryButton applyButton = new SecondaryButton("Apply Filters");
         applyButton.setStyle(
             "-fx-background-color: #3498db; " +
@@ -93,48 +214,27 @@ public class TransactionListView extends BaseView {
             new Label("Status:"), statusFilter,
             new Label("Currency:"), currencyFilter,
             new Label("Customer:"), customerFilter,
+            new Label("Executed:"), fromDateFilter, toDateFilter,
             applyButton, resetButton
         );
         
         return filterBox;
     }
     
-    private TableView<TransactionRow> createTableView() {
-        TableView<TransactionRow> table = new TableView<>();
+    private TableView<TransactionTable.Row> createTableView() {
+        TableView<TransactionTable.Row> table = new TableView<>();
         table.setItems(transactionData);
         table.setPrefHeight(400);
         
-        TableColumn<TransactionRow, String> idCol = new TableColumn<>("ID");
-        idCol.setCellValueFactory(new PropertyValueFactory<>("displayId"));
-        idCol.setPrefWidth(80);
-        
-        TableColumn<TransactionRow, String> customerCol = new TableColumn<>("Customer");
-        customerCol.setCellValueFactory(new PropertyValueFactory<>("customerId"));
-        customerCol.setPrefWidth(100);
-        
-        TableColumn<TransactionRow, String> sourceCol = new TableColumn<>("From");
-        sourceCol.setCellValueFactory(new PropertyValueFactory<>("sourceAmount"));
-        sourceCol.setPrefWidth(120);
-        
-        TableColumn<TransactionRow, String> targetCol = new TableColumn<>("To");
-        targetCol.setCellValueFactory(new PropertyValueFactory<>("targetAmount"));
-        targetCol.setPrefWidth(120);
-        
-        TableColumn<TransactionRow, String> rateCol = new TableColumn<>("Rate");
-        rateCol.setCellValueFactory(new PropertyValueFactory<>("exchangeRate"));
-        rateCol.setPrefWidth(100);
-        
-        TableColumn<TransactionRow, String> statusCol = new TableColumn<>("Status");
-        statusCol.setCellValueFactory(new PropertyValueFactory<>("status"));
-        statusCol.setPrefWidth(100);
-        
-        TableColumn<TransactionRow, String> dateCol = new TableColumn<>("Execution Date");
-        dateCol.setCellValueFactory(new PropertyValueFactory<>("executionDate"));
-        dateCol.setPrefWidth(150);
-        
-        TableColumn<TransactionRow, String> consultantCol = new TableColumn<>("Created By");
-        consultantCol.setCellValueFactory(new PropertyValueFactory<>("createdBy"));
-        consultantCol.setPrefWidth(120);
+        TableColumn<TransactionTable.Row, String> idCol = column("ID", 80,
+            row -> row.getId().substring(0, Math.min(8, row.getId().length())));
+        TableColumn<TransactionTable.Row, String> customerCol = column("Customer", 100, TransactionTable.Row::getCustomerId);
+        TableColumn<TransactionTable.Row, String> sourceCol = column("From", 120, row -> row.getSourceAmount().toString());
+        TableColumn<TransactionTable.Row, String> targetCol = column("To", 120, row -> row.getTargetAmount().toString());
+        TableColumn<TransactionTable.Row, String> rateCol = column("Rate", 100, row -> String.format("%.6f", row.getExchangeRate()));
+        TableColumn<TransactionTable.Row, String> statusCol = column("Status", 100, row -> row.getStatus().getDisplayName());
+        TableColumn<TransactionTable.Row, String> dateCol = column("Execution Date", 150, row -> row.getExecutionDate().format(DATE_TIME));
+        TableColumn<TransactionTable.Row, String> consultantCol = column("Created By", 120, TransactionTable.Row::getCreatedBy);
         
         table.getColumns().add(idCol);
         table.getColumns().add(customerCol);
@@ -148,6 +248,15 @@ public class TransactionListView extends BaseView {
         return table;
     }
     
+    // cell text is decoded from the columns only for the rows on screen
+    private static TableColumn<TransactionTable.Row, String> column(String title, double width,
+                                                                   Function<TransactionTable.Row, String> value) {
+        TableColumn<TransactionTable.Row, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(value.apply(cell.getValue())));
+        column.setPrefWidth(width);
+        return column;
+    }
+    
     private HBox createActionPanel() {
         HBox actionBox = new HBox(10);
         actionBox.setPadding(new Insets(10));
@@ -159,14 +268,17 @@ public class TransactionListView extends BaseView {
         InfoButton viewDetailsButton = new InfoButton("View Details");
         viewDetailsButton.setOnAction(e -> viewTransactionDetails());
         
+        NeutralButton exportButton = new NeutralButton("Export");
+        exportButton.setOnAction(e -> exportTransactions());
+        
         DangerButton revertButton = new DangerButton("Revert Transaction");
         revertButton.setOnAction(e -> revertTransaction());
         
         AppContext context = AppContext.getInstance();
         if (context.getCurrentUser() != null && context.getCurrentUser().isAdmin()) {
-            actionBox.getChildren().addAll(refreshButton, viewDetailsButton, revertButton);
+            actionBox.getChildren().addAll(refreshButton, viewDetailsButton, exportButton, revertButton);
         } else {
-            actionBox.getChildren().addAll(refreshButton, viewDetailsButton);
+            actionBox.getChildren().addAll(refreshButton, viewDetailsButton, exportButton);
         }
         
         return actionBox;
@@ -181,64 +293,105 @@ public class TransactionListView extends BaseView {
             return;
         }
         
-        List<Transaction> transactions;
-        
-        if (currentUser.isAdmin()) {
-            transactions = context.getTransactionRepository().findAll(context.getJwtToken());
-        } else {
-            transactions = context.getTransactionRepository().findByConsultantId(currentUser.getId(), context.getJwtToken());
+        shownQuery = new TransactionRepository.TransactionQuery();
+        if (!currentUser.isAdmin()) {
+            shownQuery.consultant(currentUser.getId());
         }
-
-        transactionData.clear();
-        transactions.forEach(t -> transactionData.add(new TransactionRow(t)));
+        show(context.getTransactionRepository().queryTable(shownQuery, context.getJwtToken()));
     }
     
     private void applyFilters() {
         AppContext context = AppContext.getInstance();
-        User currentUser = context.getCurrentUser();
+        TransactionRepository.TransactionQuery query = currentQuery();
+        if (query == null) return;
         
-        if (currentUser == null) return;
+        TransactionTable loaded = context.getTransactionRepository().queryTable(query, context.getJwtToken());
         
-        List<Transaction> transactions;
-        if (currentUser.isAdmin()) {
-            transactions = context.getTransactionRepository().findAll(context.getJwtToken());
-        } else {
-            transactions = context.getTransactionRepository().findByConsultantId(currentUser.getId(), context.getJwtToken());
+        shownQuery = query;
+        show(loaded);
+    }
+    
+    /**
+     * The query for the current filter values, restricted to the user's own
+     * transactions unless admin; null if not logged in or the range is invalid
+     */
+    private TransactionRepository.TransactionQuery currentQuery() {
+        User currentUser = AppContext.getInstance().getCurrentUser();
+        
+        if (currentUser == null) return null;
+        
+        TransactionRepository.TransactionQuery query = new TransactionRepository.TransactionQuery();
+        if (!currentUser.isAdmin()) {
+            query.consultant(currentUser.getId());
         }
         
-        TransactionService transactionService = context.getTransactionService();
-        
         String statusValue = statusFilter.getValue();
         if (statusValue != null && !statusValue.equals("All Statuses")) {
-            TransactionStatus status = TransactionStatus.valueOf(
-                statusValue.toUpperCase().replace(" ", "_")
-            );
-            transactions = transactionService.filterByStatus(transactions, status);
+            query.status(TransactionStatus.valueOf(statusValue.toUpperCase().replace(" ", "_")));
         }
         
-        Currency currency = currencyFilter.getValue();
-        if (currency != null) {
-            transactions = transactionService.filterByCurrency(transactions, currency);
-        }
+        query.currency(currencyFilter.getValue());
         
         String customer = customerFilter.getText().trim();
         if (!customer.isEmpty()) {
-            transactions = transactionService.filterByCustomer(transactions, customer);
+            query.customer(customer);
+        }
+        
+        if (fromDateFilter.getValue() != null && toDateFilter.getValue() != null
+                && fromDateFilter.getValue().isAfter(toDateFilter.getValue())) {
+            showError("The start date must not be after the end date");
+            return null;
         }
+        query.executedBetween(fromDateFilter.getValue(), toDateFilter.getValue());
+        return query;
+    }
+    
+    /**
+     * Downloads all transactions matching the current filters to a file chosen
+     * by the user. The server streams the export and the client writes it
+     * straight to disk, so the rows are never held in memory.
+     */
+    private void exportTransactions() {
+        TransactionRepository.TransactionQuery query = currentQuery();
+        if (query == null) return;
+        
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Transactions");
+        fileChooser.setInitialFileName("transactions.csv");
+        fileChooser.getExtensionFilters().addAll(
+            new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+            new FileChooser.ExtensionFilter("NDJSON Files", "*.ndjson")
+        );
+        File file = fileChooser.showSaveDialog(tableView.getScene().getWindow());
+        if (file == null) return;
         
-        transactionData.clear();
-        transactions.forEach(t -> transactionData.add(new TransactionRow(t)));
+        String format = file.getName().toLowerCase().endsWith(".ndjson") ? "ndjson" : "csv";
+        AppContext context = AppContext.getInstance();
+        String token = context.getJwtToken();
+        Task<Path> task = new Task<>() {
+            @Override
+            protected Path call() {
+                return context.getTransactionRepository().export(query, format, file.toPath(), token);
+            }
+        };
+        task.setOnSucceeded(e -> showSuccess("Transactions exported to " + task.getValue()));
+        task.setOnFailed(e -> showError("Export failed: " + task.getException().getMessage()));
+        Thread thread = new Thread(task, "transaction-export");
+        thread.setDaemon(true);
+        thread.start();
     }
     
     private void resetFilters() {
         statusFilter.setValue("All Statuses");
         currencyFilter.setValue(null);
         customerFilter.clear();
+        fromDateFilter.setValue(null);
+        toDateFilter.setValue(null);
         loadTransactions();
     }
     
     private void viewTransactionDetails() {
-        TransactionRow selected = tableView.getSelectionModel().getSelectedItem();
+        TransactionTable.Row selected = tableView.getSelectionModel().getSelectedItem();
         if (selected == null) {
             showError("Please select a transaction");
             return;
@@ -272,14 +425,14 @@ public class TransactionListView extends BaseView {
             transaction.getExchangeRate(),
             transaction.getExchangeRateVersionId(),
             transaction.getStatus().getDisplayName(),
-            transaction.getExecutionDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
+            transaction.getExecutionDate().format(DATE_TIME),
             transaction.getCreatedBy(),
-            transaction.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
+            transaction.getCreatedAt().format(DATE_TIME),
             transaction.isReverted() ? 
                 String.format("\n\nREVERTED\nReason: %s\nReverted By: %s\nReverted At: %s",
                     transaction.getRevertReason(),
                     transaction.getRevertedBy(),
-                    transaction.getRevertedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))) 
+                    transaction.getRevertedAt().format(DATE_TIME)) 
                 : ""
         );
         
@@ -295,7 +448,7 @@ public class TransactionListView extends BaseView {
             return;
         }
         
-        TransactionRow selected = tableView.getSelectionModel().getSelectedItem();
+        TransactionTable.Row selected = tableView.getSelectionModel().getSelectedItem();
         if (selected == null) {
             showError("Please select a transaction");
             return;
@@ -331,6 +484,11 @@ public class TransactionListView extends BaseView {
                 context.getTransactionRepository().revert(selected.getId(), reason, context.getJwtToken());
                 loadTransactions();
                 showSuccess("Transaction reverted successfully");
+            } catch (TransactionRepository.AlreadyRevertedException e) {
+                Transaction reverted = e.getTransaction();
+                loadTransactions();
+                showError("Transaction was already reverted by " + reverted.getRevertedBy()
+                    + (reverted.getRevertReason() != null ? ": " + reverted.getRevertReason() : ""));
             } catch (Exception e) {
                 showError("Failed to revert transaction: " + e.getMessage());
             }
@@ -344,49 +502,4 @@ public class TransactionListView extends BaseView {
     private void showSuccess(String message) {
         DialogUtils.showSuccess(message);
     }
-    
-    public static class TransactionRow {
-        private final Transaction transaction;
-        private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-        
-        public TransactionRow(Transaction transaction) {
-            this.transaction = transaction;
-        }
-        
-        public String getId() {
-            return transaction.getId();
-        }
-        
-        public String getDisplayId() {
-            return transaction.getId().substring(0, Math.min(8, transaction.getId().length()));
-        }
-        
-        public String getCustomerId() {
-            return transaction.getCustomerId();
-        }
-        
-        public String getSourceAmount() {
-            return transaction.getSourceAmount().toString();
-        }
-        
-        public String getTargetAmount() {
-            return transaction.getTargetAmount().toString();
-        }
-        
-        public String getExchangeRate() {
-            return String.format("%.6f", transaction.getExchangeRate());
-        }
-        
-        public String getStatus() {
-            return transaction.getStatus().getDisplayName();
-        }
-        
-        public String getExecutionDate() {
-            return transaction.getExecutionDate().format(formatter);
-        }
-        
-        public String getCreatedBy() {
-            return transaction.getCreatedBy();
-        }
-    }
 }